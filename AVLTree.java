@@ -0,0 +1,44 @@
+public class AVLTree extends BinarySearchTree {
+
+    // Constructor: Initializes an empty AVL tree
+    public AVLTree() {
+        super();
+    }
+
+    // AVL trees keep their height logarithmic by rotating, so they never rebuild subtrees
+    @Override
+    public void setRebuildAlpha(double alpha) {
+        throw new UnsupportedOperationException("AVL trees stay balanced by rotation");
+    }
+
+    // Splaying would undo the AVL condition the rotations maintain
+    @Override
+    public void setSplaying(boolean splaying) {
+        throw new UnsupportedOperationException("AVL trees do not splay");
+    }
+
+    // Restores the AVL condition (subtree heights differ by at most one) at node,
+    // rotating when one side has become two levels taller than the other
+    @Override
+    protected BSTNode rebalance(BSTNode node) {
+        update(node);
+        int balance = balanceFactor(node);
+        if (balance > 1) {
+            if (balanceFactor(node.getLeftChild()) < 0) {
+                node.setLeftChild(rotateLeft(node.getLeftChild()));
+            }
+            return rotateRight(node);
+        } else if (balance < -1) {
+            if (balanceFactor(node.getRightChild()) > 0) {
+                node.setRightChild(rotateRight(node.getRightChild()));
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    // Returns the height of the left subtree minus the height of the right subtree
+    private int balanceFactor(BSTNode node) {
+        return height(node.getLeftChild()) - height(node.getRightChild());
+    }
+}
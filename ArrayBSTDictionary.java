@@ -0,0 +1,452 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ArrayBSTDictionary implements BSTDictionaryADT {
+    // Index that stands for "no node"
+    private static final int NIL = -1;
+
+    // Bits of the wide field telling that a label or data item takes two bytes per character
+    private static final byte WIDE_LABEL = 1, WIDE_DATA = 2;
+
+    // Node fields, one array per field, indexed by node number. A free node has height 0
+    // and is chained to the next free node through left. Lengths count characters.
+    private int[] left, right, type;
+    private int[] labelStart, labelLength, dataStart, dataLength;
+    private byte[] height, wide;
+
+    // Labels and data of all the records, back to back: one byte per character when every
+    // character of the string fits in Latin-1, otherwise two (big-endian UTF-16)
+    private byte[] arena;
+    private int arenaUsed, arenaGarbage;
+
+    private int root, size, nodesUsed, freeList;
+
+    // Constructor: Initializes an empty dictionary
+    public ArrayBSTDictionary() {
+        this(16);
+    }
+
+    // Constructor: Initializes an empty dictionary with room for capacity records
+    // before its arrays need to grow
+    public ArrayBSTDictionary(int capacity) {
+        capacity = Math.max(capacity, 1);
+        left = new int[capacity];
+        right = new int[capacity];
+        type = new int[capacity];
+        labelStart = new int[capacity];
+        labelLength = new int[capacity];
+        dataStart = new int[capacity];
+        dataLength = new int[capacity];
+        height = new byte[capacity];
+        wide = new byte[capacity];
+        arena = new byte[capacity * 16];
+        root = NIL;
+        freeList = NIL;
+    }
+
+    // Returns the Record with the specified Key, built from the arrays on each call.
+    // Returns null if the Record is not in the dictionary.
+    public Record get(Key k) {
+        int node = root;
+        while (node != NIL) {
+            int compareResult = compare(k, node);
+            if (compareResult == 0) {
+                return record(node);
+            }
+            node = compareResult < 0 ? left[node] : right[node];
+        }
+        return null;
+    }
+
+    // Inserts a Record into the ordered dictionary.
+    // Throws a DictionaryException if a Record with the same Key already exists.
+    public void put(Record d) throws DictionaryException {
+        root = insert(root, d);
+        size++;
+    }
+
+    // Removes the Record with the specified Key from the dictionary.
+    // Throws a DictionaryException if the Record is not in the dictionary.
+    public void remove(Key k) throws DictionaryException {
+        root = delete(root, k);
+        size--;
+        if (arenaGarbage > arenaUsed / 2 && arenaGarbage > 4096) {
+            compact(2 * (arenaUsed - arenaGarbage));
+        }
+    }
+
+    // Releases the spare capacity of the arrays, for example once loading is done
+    public void trimToSize() {
+        compact(arenaUsed - arenaGarbage);
+        int capacity = Math.max(nodesUsed, 1);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        type = Arrays.copyOf(type, capacity);
+        labelStart = Arrays.copyOf(labelStart, capacity);
+        labelLength = Arrays.copyOf(labelLength, capacity);
+        dataStart = Arrays.copyOf(dataStart, capacity);
+        dataLength = Arrays.copyOf(dataLength, capacity);
+        height = Arrays.copyOf(height, capacity);
+        wide = Arrays.copyOf(wide, capacity);
+    }
+
+    // Returns the successor of the specified Key, which does not need to be in the dictionary.
+    // Returns null if the Key has no successor.
+    public Record successor(Key k) {
+        int candidate = NIL;
+        for (int node = root; node != NIL; ) {
+            if (compare(k, node) < 0) {
+                candidate = node;
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return record(candidate);
+    }
+
+    // Returns the predecessor of the specified Key, which does not need to be in the dictionary.
+    // Returns null if the Key has no predecessor.
+    public Record predecessor(Key k) {
+        int candidate = NIL;
+        for (int node = root; node != NIL; ) {
+            if (compare(k, node) > 0) {
+                candidate = node;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return record(candidate);
+    }
+
+    // Returns the Record with the smallest Key in the dictionary.
+    // Returns null if the dictionary is empty.
+    public Record smallest() {
+        int node = root;
+        while (node != NIL && left[node] != NIL) {
+            node = left[node];
+        }
+        return record(node);
+    }
+
+    // Returns the Record with the largest Key in the dictionary.
+    // Returns null if the dictionary is empty.
+    public Record largest() {
+        int node = root;
+        while (node != NIL && right[node] != NIL) {
+            node = right[node];
+        }
+        return record(node);
+    }
+
+    // Returns the number of Records in the dictionary
+    public int size() {
+        return size;
+    }
+
+    // Returns a list of records starting with a given prefix
+    List<Record> getRecordsStartingWith(String prefix) {
+        List<Record> matchedRecords = new ArrayList<>();
+        Key from = new Key(prefix, Integer.MIN_VALUE);
+        String lowerPrefix = from.getLabel();
+        // An AVL tree of up to 2^31 nodes is less than 64 levels deep
+        int[] stack = new int[64];
+        int top = 0;
+        for (int node = root; node != NIL; ) {
+            if (compare(from, node) <= 0) {
+                stack[top++] = node;
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            if (!startsWith(node, lowerPrefix)) {
+                break;
+            }
+            matchedRecords.add(record(node));
+            for (int n = right[node]; n != NIL; n = left[n]) {
+                stack[top++] = n;
+            }
+        }
+        return matchedRecords;
+    }
+
+    // Returns the number of bytes held by the arrays backing the dictionary
+    public long memoryFootprint() {
+        long intArrays = 7L * (16 + 4L * left.length);
+        return intArrays + 2L * (16 + height.length) + 16 + arena.length;
+    }
+
+    // Helper method for inserting a record into the subtree rooted at node,
+    // returning the new root of the subtree
+    private int insert(int node, Record d) throws DictionaryException {
+        if (node == NIL) {
+            return newNode(d);
+        }
+        // The child is stored only after the call returns, since the call may replace the
+        // arrays when they grow
+        int compareResult = compare(d.getKey(), node);
+        if (compareResult < 0) {
+            int child = insert(left[node], d);
+            left[node] = child;
+        } else if (compareResult > 0) {
+            int child = insert(right[node], d);
+            right[node] = child;
+        } else {
+            throw new DictionaryException("Record with the same key already exists");
+        }
+        return balance(node);
+    }
+
+    // Helper method for removing the record with key k from the subtree rooted at node,
+    // returning the new root of the subtree
+    private int delete(int node, Key k) throws DictionaryException {
+        if (node == NIL) {
+            throw new DictionaryException("Key not found in the dictionary");
+        }
+        int compareResult = compare(k, node);
+        if (compareResult < 0) {
+            left[node] = delete(left[node], k);
+        } else if (compareResult > 0) {
+            right[node] = delete(right[node], k);
+        } else {
+            arenaGarbage += bytes(labelLength[node], WIDE_LABEL, node) + bytes(dataLength[node], WIDE_DATA, node);
+            if (left[node] == NIL || right[node] == NIL) {
+                int child = left[node] != NIL ? left[node] : right[node];
+                freeNode(node);
+                return child;
+            }
+            // Two children: take over the entry of the smallest node of the right subtree
+            int smallest = right[node];
+            while (left[smallest] != NIL) {
+                smallest = left[smallest];
+            }
+            type[node] = type[smallest];
+            wide[node] = wide[smallest];
+            labelStart[node] = labelStart[smallest];
+            labelLength[node] = labelLength[smallest];
+            dataStart[node] = dataStart[smallest];
+            dataLength[node] = dataLength[smallest];
+            right[node] = deleteSmallest(right[node]);
+        }
+        return balance(node);
+    }
+
+    // Helper method for unlinking the smallest node of a non-empty subtree, whose entry
+    // has already been moved elsewhere
+    private int deleteSmallest(int node) {
+        if (left[node] == NIL) {
+            int child = right[node];
+            freeNode(node);
+            return child;
+        }
+        left[node] = deleteSmallest(left[node]);
+        return balance(node);
+    }
+
+    // Restores the AVL condition at node and returns the new root of its subtree
+    private int balance(int node) {
+        updateHeight(node);
+        int balance = heightOf(left[node]) - heightOf(right[node]);
+        if (balance > 1) {
+            if (heightOf(left[left[node]]) < heightOf(right[left[node]])) {
+                left[node] = rotateLeft(left[node]);
+            }
+            return rotateRight(node);
+        } else if (balance < -1) {
+            if (heightOf(right[right[node]]) < heightOf(left[right[node]])) {
+                right[node] = rotateRight(right[node]);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    // Rotates the subtree rooted at node to the left and returns its new root
+    private int rotateLeft(int node) {
+        int pivot = right[node];
+        right[node] = left[pivot];
+        left[pivot] = node;
+        updateHeight(node);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    // Rotates the subtree rooted at node to the right and returns its new root
+    private int rotateRight(int node) {
+        int pivot = left[node];
+        left[node] = right[pivot];
+        right[pivot] = node;
+        updateHeight(node);
+        updateHeight(pivot);
+        return pivot;
+    }
+
+    // Recomputes the height of node from the heights of its children
+    private void updateHeight(int node) {
+        height[node] = (byte) (1 + Math.max(heightOf(left[node]), heightOf(right[node])));
+    }
+
+    // Returns the height of a subtree, where an empty subtree has height 0
+    private int heightOf(int node) {
+        return node == NIL ? 0 : height[node];
+    }
+
+    // Compares k with the key stored in node, scanning the label in the arena once
+    private int compare(Key k, int node) {
+        String label = k.getLabel();
+        int length = labelLength[node];
+        int n = Math.min(label.length(), length);
+        for (int i = 0; i < n; i++) {
+            char c = label.charAt(i);
+            char o = labelChar(node, i);
+            if (c != o) {
+                return c < o ? -1 : 1;
+            }
+        }
+        if (label.length() != length) {
+            return label.length() < length ? -1 : 1;
+        }
+        return Integer.compare(k.getType(), type[node]);
+    }
+
+    // Checks whether the label stored in node starts with prefix
+    private boolean startsWith(int node, String prefix) {
+        if (labelLength[node] < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (labelChar(node, i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Builds a Record from the fields of node, or returns null for NIL
+    private Record record(int node) {
+        if (node == NIL) {
+            return null;
+        }
+        String label = string(labelStart[node], labelLength[node], (wide[node] & WIDE_LABEL) != 0);
+        String data = string(dataStart[node], dataLength[node], (wide[node] & WIDE_DATA) != 0);
+        return new Record(new Key(label, type[node]), data);
+    }
+
+    // Returns the i-th character of the label stored in node
+    private char labelChar(int node, int i) {
+        if ((wide[node] & WIDE_LABEL) == 0) {
+            return (char) (arena[labelStart[node] + i] & 0xFF);
+        }
+        int at = labelStart[node] + 2 * i;
+        return (char) ((arena[at] & 0xFF) << 8 | (arena[at + 1] & 0xFF));
+    }
+
+    // Decodes length characters of the arena starting at start
+    private String string(int start, int length, boolean isWide) {
+        if (!isWide) {
+            return new String(arena, start, length, StandardCharsets.ISO_8859_1);
+        }
+        return new String(arena, start, 2 * length, StandardCharsets.UTF_16BE);
+    }
+
+    // Returns the number of arena bytes taken by a string of length characters of node
+    private int bytes(int length, byte flag, int node) {
+        return (wide[node] & flag) != 0 ? 2 * length : length;
+    }
+
+    // Takes a free node, or a new one at the end of the arrays, and stores d in it
+    private int newNode(Record d) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = left[node];
+        } else {
+            if (nodesUsed == left.length) {
+                grow();
+            }
+            node = nodesUsed++;
+        }
+        String label = d.getKey().getLabel();
+        String data = d.getDataItem();
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 1;
+        type[node] = d.getKey().getType();
+        wide[node] = (byte) ((isLatin1(label) ? 0 : WIDE_LABEL) | (isLatin1(data) ? 0 : WIDE_DATA));
+        labelStart[node] = append(label, (wide[node] & WIDE_LABEL) != 0);
+        labelLength[node] = label.length();
+        dataStart[node] = append(data, (wide[node] & WIDE_DATA) != 0);
+        dataLength[node] = data.length();
+        return node;
+    }
+
+    // Puts node on the free list
+    private void freeNode(int node) {
+        height[node] = 0;
+        left[node] = freeList;
+        freeList = node;
+    }
+
+    // Checks whether every character of s fits in one byte
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Copies s to the end of the arena, one or two bytes per character, and returns where it starts
+    private int append(String s, boolean isWide) {
+        byte[] encoded = s.getBytes(isWide ? StandardCharsets.UTF_16BE : StandardCharsets.ISO_8859_1);
+        if (arenaUsed + encoded.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length + arena.length / 2, arenaUsed + encoded.length));
+        }
+        System.arraycopy(encoded, 0, arena, arenaUsed, encoded.length);
+        arenaUsed += encoded.length;
+        return arenaUsed - encoded.length;
+    }
+
+    // Doubles the capacity of the node arrays
+    private void grow() {
+        int capacity = left.length * 2;
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        type = Arrays.copyOf(type, capacity);
+        labelStart = Arrays.copyOf(labelStart, capacity);
+        labelLength = Arrays.copyOf(labelLength, capacity);
+        dataStart = Arrays.copyOf(dataStart, capacity);
+        dataLength = Arrays.copyOf(dataLength, capacity);
+        height = Arrays.copyOf(height, capacity);
+        wide = Arrays.copyOf(wide, capacity);
+    }
+
+    // Copies the labels and data of the live nodes into a fresh arena of the given size,
+    // dropping the bytes of removed records
+    private void compact(int capacity) {
+        byte[] old = arena;
+        arena = new byte[Math.max(16, capacity)];
+        arenaUsed = 0;
+        arenaGarbage = 0;
+        for (int node = 0; node < nodesUsed; node++) {
+            if (height[node] != 0) {
+                labelStart[node] = move(old, labelStart[node], bytes(labelLength[node], WIDE_LABEL, node));
+                dataStart[node] = move(old, dataStart[node], bytes(dataLength[node], WIDE_DATA, node));
+            }
+        }
+    }
+
+    // Copies length bytes of the old arena to the end of the current one
+    private int move(byte[] old, int start, int length) {
+        System.arraycopy(old, start, arena, arenaUsed, length);
+        arenaUsed += length;
+        return arenaUsed - length;
+    }
+}
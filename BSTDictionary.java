@@ -1,28 +1,104 @@
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BSTDictionary implements BSTDictionaryADT, Iterable<Record> {
+    // Orders records by their keys
+    private static final Comparator<Record> BY_KEY = (a, b) -> a.getKey().compareTo(b.getKey());
 
-public class BSTDictionary implements BSTDictionaryADT {
     private BinarySearchTree bst;
 
+    // Optional secondary index answering prefix queries; null when not enabled
+    private RadixTrie prefixIndex;
+
+    // Operation metrics; null when not enabled. Disabled metrics still leave each operation
+    // a null check and the tree's comparison count, which every descent keeps.
+    private DictionaryMetrics metrics;
+
+    // Optional cache of recently read records in front of get; null when not enabled
+    private LookupCache cache;
+
+    // Optional filter answering gets of absent keys without searching; null when not
+    // enabled. It is rebuilt twice as large, with the same settings, when it overflows.
+    private CountingBloomFilter filter;
+    private double filterRate;
+    private long filterBytes;
+
     // Constructor: Initializes a new binary search tree
     public BSTDictionary() {
-        this.bst = new BinarySearchTree();
+        this(false);
+    }
+
+    // Constructor: Initializes a new dictionary backed by a self-balancing AVL tree when
+    // balanced is true, so operations stay O(log n) regardless of insertion order
+    public BSTDictionary(boolean balanced) {
+        this(balanced, false);
+    }
+
+    // Constructor: Initializes a new dictionary that also keeps a radix trie of the labels
+    // when prefixIndex is true, so prefix listings and counts take time proportional to the
+    // prefix length plus the number of results, at the cost of extra memory and slower writes
+    public BSTDictionary(boolean balanced, boolean prefixIndex) {
+        this.bst = balanced ? new AVLTree() : new BinarySearchTree();
+        this.prefixIndex = prefixIndex ? new RadixTrie() : null;
     }
 
     // Returns the Record with the specified Key.
     // Returns null if the Record is not in the dictionary.
     public Record get(Key k) {
+        if (isFilteredOut(k.hashCode())) {
+            return null;
+        }
+        if (cache != null) {
+            return checkFiltered(getCached(k));
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
         BSTNode node = bst.get(bst.getRoot(), k);
-        return node != null ? node.getRecord() : null;
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.GET, start, bst.comparisons() - compared);
+        }
+        return checkFiltered(node != null ? node.getRecord() : null);
+    }
+
+    // Returns the Record whose Key has the given label and type, comparing the label
+    // directly against the stored keys instead of allocating a Key.
+    // Returns null if the Record is not in the dictionary.
+    public Record get(CharSequence label, int type) {
+        if (isFilteredOut(Key.hash(label, type))) {
+            return null;
+        }
+        if (cache != null) {
+            return checkFiltered(getCached(new Key(label.toString(), type)));
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
+        BSTNode node = bst.get(bst.getRoot(), label, type);
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.GET, start, bst.comparisons() - compared);
+        }
+        return checkFiltered(node != null ? node.getRecord() : null);
     }
 
     // Inserts a Record into the ordered dictionary.
     // Throws a DictionaryException if a Record with the same Key already exists.
     public void put(Record d) throws DictionaryException {
-        if (bst.getRoot() == null) {
-            bst.insert(new BSTNode(null), d); // Initialize root if it's null
-        } else {
-            bst.insert(bst.getRoot(), d);
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
+        bst.insert(bst.getRoot(), d);
+        if (prefixIndex != null) {
+            prefixIndex.put(d);
+        }
+        if (filter != null) {
+            addToFilter(d);
+        }
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.PUT, start, bst.comparisons() - compared);
         }
     }
 
@@ -32,52 +108,642 @@ public class BSTDictionary implements BSTDictionaryADT {
         if (bst.getRoot() == null) {
             throw new DictionaryException("Dictionary is empty");
         }
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
         bst.remove(bst.getRoot(), k);
+        if (prefixIndex != null) {
+            prefixIndex.remove(k);
+        }
+        if (cache != null) {
+            cache.invalidate(k);
+        }
+        if (filter != null) {
+            filter.remove(k.hashCode());
+        }
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.REMOVE, start, bst.comparisons() - compared);
+        }
+    }
+
+    // Inserts a batch of records, sorting them first if they are not already in key order,
+    // by merging them with the current contents and rebuilding a perfectly balanced tree in
+    // linear time. Every duplicate key is reported in a single DictionaryException, in which
+    // case the dictionary is left unchanged.
+    public void bulkLoad(List<Record> records) throws DictionaryException {
+        List<Record> batch = new ArrayList<>(records);
+        if (!isSorted(batch)) {
+            batch.sort(BY_KEY);
+        }
+        List<Record> existing = bst.records();
+        List<Record> merged = new ArrayList<>(existing.size() + batch.size());
+        List<Key> duplicates = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < existing.size() || j < batch.size()) {
+            Record next;
+            if (j == batch.size()) {
+                next = existing.get(i++);
+            } else if (i == existing.size()) {
+                next = batch.get(j++);
+            } else if (BY_KEY.compare(existing.get(i), batch.get(j)) <= 0) {
+                next = existing.get(i++);
+            } else {
+                next = batch.get(j++);
+            }
+            if (!merged.isEmpty() && BY_KEY.compare(merged.get(merged.size() - 1), next) == 0) {
+                duplicates.add(next.getKey());
+            } else {
+                merged.add(next);
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            throw new DictionaryException(duplicateMessage(duplicates));
+        }
+        bst.build(merged);
+        if (prefixIndex != null) {
+            for (Record d : batch) {
+                prefixIndex.put(d);
+            }
+        }
+        if (filter != null) {
+            addAllToFilter(batch);
+        }
+    }
+
+    // Returns the Records with the specified Keys, in the order of the Keys, with null for
+    // each Key that is not in the dictionary. Keys that arrive in increasing order are looked
+    // up in one walk, each search continuing from where the previous one ended. Others are
+    // looked up from the root, since sorting them costs as many comparisons as it saves.
+    // Either way every Key goes through the Bloom filter, the cache and the metrics like a get.
+    public List<Record> getAll(List<Key> keys) {
+        Record[] results = new Record[keys.size()];
+        if (!inOrder(keys)) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = get(keys.get(i));
+            }
+            return Arrays.asList(results);
+        }
+        // Only the Keys that the filter lets through and the cache cannot answer are walked to
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
+        List<Key> walked = new ArrayList<>(keys.size());
+        int[] positions = new int[keys.size()];
+        int looked = 0;
+        for (int i = 0; i < results.length; i++) {
+            Key k = keys.get(i);
+            if (isFilteredOut(k.hashCode())) {
+                continue;
+            }
+            looked++;
+            results[i] = cache != null ? cache.get(k) : null;
+            if (results[i] == null) {
+                positions[walked.size()] = i;
+                walked.add(k);
+            }
+        }
+        BSTNode[] found = new BSTNode[walked.size()];
+        bst.getSorted(walked, found);
+        for (int j = 0; j < found.length; j++) {
+            Record d = found[j] != null ? found[j].getRecord() : null;
+            if (d != null && cache != null) {
+                cache.put(d);
+            }
+            results[positions[j]] = checkFiltered(d);
+        }
+        if (metrics != null && looked > 0) {
+            metrics.record(DictionaryMetrics.GET, start, bst.comparisons() - compared, looked);
+        }
+        return Arrays.asList(results);
+    }
+
+    // Inserts a batch of records, reporting for each one whether it was inserted instead of
+    // throwing: a record is rejected when its Key is already in the dictionary or earlier
+    // in the batch. Large batches are merged with the current contents into a rebuilt
+    // balanced tree; small ones are inserted in key order in one walk down the tree.
+    public boolean[] putAll(List<Record> records) {
+        List<Key> keys = new ArrayList<>(records.size());
+        for (Record d : records) {
+            keys.add(d.getKey());
+        }
+        int[] order = sortedOrder(keys);
+        boolean[] inserted = new boolean[records.size()];
+        List<Record> accepted = new ArrayList<>();
+        if (isLargeBatch(records.size())) {
+            BSTNode[] found = findSorted(keys, order);
+            for (int i = 0; i < order.length; i++) {
+                Record d = records.get(order[i]);
+                if (found[i] == null && (accepted.isEmpty()
+                        || BY_KEY.compare(accepted.get(accepted.size() - 1), d) != 0)) {
+                    accepted.add(d);
+                    inserted[order[i]] = true;
+                }
+            }
+            List<Record> existing = bst.records();
+            List<Record> merged = new ArrayList<>(existing.size() + accepted.size());
+            int i = 0, j = 0;
+            while (i < existing.size() || j < accepted.size()) {
+                if (j == accepted.size() || (i < existing.size()
+                        && BY_KEY.compare(existing.get(i), accepted.get(j)) < 0)) {
+                    merged.add(existing.get(i++));
+                } else {
+                    merged.add(accepted.get(j++));
+                }
+            }
+            bst.build(merged);
+        } else {
+            List<Record> sorted = new ArrayList<>(order.length);
+            for (int i : order) {
+                sorted.add(records.get(i));
+            }
+            boolean[] done = new boolean[order.length];
+            bst.insertSorted(sorted, done);
+            for (int i = 0; i < order.length; i++) {
+                if (done[i]) {
+                    accepted.add(sorted.get(i));
+                    inserted[order[i]] = true;
+                }
+            }
+        }
+        if (prefixIndex != null) {
+            for (Record d : accepted) {
+                prefixIndex.put(d);
+            }
+        }
+        if (filter != null) {
+            addAllToFilter(accepted);
+        }
+        return inserted;
+    }
+
+    // Removes the Records with the specified Keys, reporting for each Key whether it was
+    // removed instead of throwing when one is missing. Large batches rebuild the tree from
+    // the remaining records; small ones are removed in key order in one walk down the tree.
+    public boolean[] removeAll(List<Key> keys) {
+        int[] order = sortedOrder(keys);
+        boolean[] removed = new boolean[keys.size()];
+        List<Key> doomed = new ArrayList<>();
+        if (isLargeBatch(keys.size())) {
+            BSTNode[] found = findSorted(keys, order);
+            for (int i = 0; i < order.length; i++) {
+                if (found[i] != null && (i == 0 || found[i - 1] != found[i])) {
+                    doomed.add(keys.get(order[i]));
+                    removed[order[i]] = true;
+                }
+            }
+            List<Record> remaining = new ArrayList<>(bst.size() - doomed.size());
+            int j = 0;
+            for (Record d : bst.records()) {
+                if (j < doomed.size() && d.getKey().compareTo(doomed.get(j)) == 0) {
+                    j++;
+                } else {
+                    remaining.add(d);
+                }
+            }
+            bst.build(remaining);
+        } else {
+            List<Key> sorted = new ArrayList<>(order.length);
+            for (int i : order) {
+                sorted.add(keys.get(i));
+            }
+            boolean[] done = new boolean[order.length];
+            bst.removeSorted(sorted, done);
+            for (int i = 0; i < order.length; i++) {
+                if (done[i]) {
+                    doomed.add(sorted.get(i));
+                    removed[order[i]] = true;
+                }
+            }
+        }
+        if (prefixIndex != null) {
+            for (Key k : doomed) {
+                prefixIndex.remove(k);
+            }
+        }
+        if (cache != null) {
+            for (Key k : doomed) {
+                cache.invalidate(k);
+            }
+        }
+        if (filter != null) {
+            for (Key k : doomed) {
+                filter.remove(k.hashCode());
+            }
+        }
+        return removed;
+    }
+
+    // Checks whether a batch of the given size may change enough records that rebuilding the
+    // tree in linear time beats updating it one record at a time
+    private boolean isLargeBatch(int size) {
+        return size > 0 && size >= bst.size() / 8;
+    }
+
+    // Checks whether the keys are in non-decreasing order
+    private static boolean inOrder(List<Key> keys) {
+        for (int i = 1; i < keys.size(); i++) {
+            if (keys.get(i - 1).compareTo(keys.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the positions of the keys listed in increasing key order, skipping the sort
+    // when the keys already arrive in order
+    private static int[] sortedOrder(List<Key> keys) {
+        int[] result = new int[keys.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = i;
+        }
+        if (inOrder(keys)) {
+            return result;
+        }
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    // Looks up the keys in the given order, returning the node found for each of them
+    private BSTNode[] findSorted(List<Key> keys, int[] order) {
+        List<Key> sortedKeys = new ArrayList<>(order.length);
+        for (int i : order) {
+            sortedKeys.add(keys.get(i));
+        }
+        BSTNode[] found = new BSTNode[order.length];
+        bst.getSorted(sortedKeys, found);
+        return found;
+    }
+
+    // Returns a read-only copy of the current contents laid out for fast lookups, in O(n).
+    // The copy is independent of the dictionary: later puts and removes do not change it,
+    // so freeze again after the data changes.
+    public FrozenIndex freeze() {
+        return new FrozenIndex(bst.records());
+    }
+
+    // Rebuilds any subtree whose larger child holds more than alpha of its records after
+    // an insert or remove, keeping a plain tree's height logarithmic (see
+    // BinarySearchTree.setRebuildAlpha). Throws UnsupportedOperationException for a
+    // balanced dictionary, whose AVL tree stays balanced by rotating.
+    public void setRebuildAlpha(double alpha) {
+        bst.setRebuildAlpha(alpha);
+    }
+
+    // Moves every Record that get reaches to the root of the tree, so a skewed lookup mix
+    // finds its frequent words near the top (see BinarySearchTree.setSplaying). Gets then
+    // change the tree. Throws UnsupportedOperationException for a balanced dictionary.
+    public void setSplaying(boolean splaying) {
+        bst.setSplaying(splaying);
+    }
+
+    // Starts recording the count, latency and key comparisons of every ADT operation and
+    // the shape of the tree, and returns the metrics. Changes to the tree then hold its
+    // monitor, so that other threads can read its shape through the metrics.
+    public DictionaryMetrics enableMetrics() {
+        if (metrics == null) {
+            bst.setShared(true);
+            metrics = new DictionaryMetrics(bst);
+        }
+        return metrics;
+    }
+
+    // Puts a cache of the capacity most recently read records in front of both get methods,
+    // so repeated lookups of the same words skip the tree descent, and returns it. Only
+    // found records are cached; remove and removeAll drop the removed ones. Gets served by
+    // the cache do not splay the tree. A capacity of 0 removes the cache.
+    public LookupCache enableCache(int capacity) {
+        cache = capacity > 0 ? new LookupCache(capacity) : null;
+        return cache;
     }
 
-    // Returns the successor of the specified Key.
+    // Returns the lookup cache of the dictionary, or null if it is not enabled
+    public LookupCache getCache() {
+        return cache;
+    }
+
+    // Keeps a counting Bloom filter of the keys, so that a get of an absent key usually
+    // returns null after a few hash probes instead of a full descent, and returns it. The
+    // filter wrongly lets about falsePositiveRate of the absent keys through to the tree,
+    // but never turns away a present one. It is sized for twice the current records and
+    // rebuilt twice as large when they outgrow it; when the counters for that rate would
+    // take more than maxBytes, the filter takes maxBytes at a higher rate instead. A rate
+    // of 0 removes the filter.
+    public CountingBloomFilter enableBloomFilter(double falsePositiveRate, long maxBytes) {
+        filterRate = falsePositiveRate;
+        filterBytes = maxBytes;
+        filter = null;
+        if (falsePositiveRate > 0) {
+            buildFilter(Math.max(1024, 2 * bst.size()));
+        }
+        return filter;
+    }
+
+    // Returns the Bloom filter of the dictionary, or null if it is not enabled
+    public CountingBloomFilter getBloomFilter() {
+        return filter;
+    }
+
+    // Replaces the Bloom filter with one sized for capacity keys holding the current records
+    private void buildFilter(int capacity) {
+        CountingBloomFilter rebuilt = new CountingBloomFilter(capacity, filterRate, filterBytes);
+        for (Record d : bst.records()) {
+            rebuilt.add(d.getKey().hashCode());
+        }
+        filter = rebuilt;
+    }
+
+    // Adds the key of a newly stored record to the Bloom filter, doubling the filter once
+    // it holds more keys than it was sized for
+    private void addToFilter(Record d) {
+        filter.add(d.getKey().hashCode());
+        if (filter.isOverloaded()) {
+            growFilter();
+        }
+    }
+
+    // Adds the keys of a batch of newly stored records to the Bloom filter, or rebuilds it
+    // from the tree, which already holds them, if they do not fit
+    private void addAllToFilter(List<Record> added) {
+        if (filter.count() + added.size() > filter.capacity()) {
+            growFilter();
+        } else {
+            for (Record d : added) {
+                filter.add(d.getKey().hashCode());
+            }
+        }
+    }
+
+    // Rebuilds the Bloom filter with room for at least twice as many keys as the tree holds
+    private void growFilter() {
+        buildFilter((int) Math.min(Integer.MAX_VALUE / 2, Math.max(2L * filter.capacity(), 2L * bst.size())));
+    }
+
+    // Checks the key with the given hash code against the Bloom filter, if there is one,
+    // counting a get that the filter answers in the metrics
+    private boolean isFilteredOut(int hash) {
+        if (filter == null) {
+            return false;
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (filter.mightContain(hash)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.GET, start, 0);
+        }
+        return true;
+    }
+
+    // Counts a get that the Bloom filter let through but the tree did not answer
+    private Record checkFiltered(Record d) {
+        if (d == null && filter != null) {
+            filter.recordFalsePositive();
+        }
+        return d;
+    }
+
+    // Answers a get from the cache, searching the tree and caching the record on a miss
+    private Record getCached(Key k) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
+        Record d = cache.get(k);
+        if (d == null) {
+            BSTNode node = bst.get(bst.getRoot(), k);
+            if (node != null) {
+                d = node.getRecord();
+                cache.put(d);
+            }
+        }
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.GET, start, bst.comparisons() - compared);
+        }
+        return d;
+    }
+
+    // Returns the metrics of the dictionary, or null if they are not enabled
+    public DictionaryMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Returns an estimate of the bytes held by the prefix index, or 0 when it is not enabled
+    public long prefixIndexFootprint() {
+        return prefixIndex != null ? prefixIndex.memoryFootprint() : 0;
+    }
+
+    // Checks whether the records are in strictly increasing key order
+    private static boolean isSorted(List<Record> records) {
+        for (int i = 1; i < records.size(); i++) {
+            if (BY_KEY.compare(records.get(i - 1), records.get(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Builds the message reporting the duplicate keys found by bulkLoad
+    private static String duplicateMessage(List<Key> duplicates) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(duplicates.size()).append(" record(s) with the same key already exist:");
+        for (int i = 0; i < duplicates.size() && i < 10; i++) {
+            Key k = duplicates.get(i);
+            builder.append(" (").append(k.getLabel()).append(", ").append(k.getType()).append(")");
+        }
+        if (duplicates.size() > 10) {
+            builder.append(" ...");
+        }
+        return builder.toString();
+    }
+
+    // Returns the successor of the specified Key, which does not need to be in the dictionary.
     // Returns null if the Key has no successor.
     public Record successor(Key k) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
         BSTNode node = bst.successor(bst.getRoot(), k);
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.SUCCESSOR, start, bst.comparisons() - compared);
+        }
         return node != null ? node.getRecord() : null;
     }
 
-    // Returns the predecessor of the specified Key.
+    // Returns the predecessor of the specified Key, which does not need to be in the dictionary.
     // Returns null if the Key has no predecessor.
     public Record predecessor(Key k) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
         BSTNode node = bst.predecessor(bst.getRoot(), k);
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.PREDECESSOR, start, bst.comparisons() - compared);
+        }
+        return node != null ? node.getRecord() : null;
+    }
+
+    // Returns the Record with the smallest Key greater than or equal to k.
+    // Returns null if there is no such Record.
+    public Record ceiling(Key k) {
+        BSTNode node = bst.ceiling(bst.getRoot(), k);
+        return node != null ? node.getRecord() : null;
+    }
+
+    // Returns the Record with the smallest Key strictly greater than k.
+    // Returns null if there is no such Record.
+    public Record higher(Key k) {
+        BSTNode node = bst.higher(bst.getRoot(), k);
+        return node != null ? node.getRecord() : null;
+    }
+
+    // Returns the Record with the largest Key less than or equal to k.
+    // Returns null if there is no such Record.
+    public Record floor(Key k) {
+        BSTNode node = bst.floor(bst.getRoot(), k);
+        return node != null ? node.getRecord() : null;
+    }
+
+    // Returns the Record with the largest Key strictly less than k.
+    // Returns null if there is no such Record.
+    public Record lower(Key k) {
+        BSTNode node = bst.lower(bst.getRoot(), k);
         return node != null ? node.getRecord() : null;
     }
 
     // Returns the Record with the smallest Key in the dictionary.
     // Returns null if the dictionary is empty.
     public Record smallest() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
         BSTNode node = bst.smallest(bst.getRoot());
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.SMALLEST, start, bst.comparisons() - compared);
+        }
         return node != null ? node.getRecord() : null;
     }
 
     // Returns the Record with the largest Key in the dictionary.
     // Returns null if the dictionary is empty.
     public Record largest() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
         BSTNode node = bst.largest(bst.getRoot());
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.LARGEST, start, bst.comparisons() - compared);
+        }
         return node != null ? node.getRecord() : null;
     }
     
-    // Returns a list of records starting with a given prefix
-    List<Record> getRecordsStartingWith(String prefix) {
+    // Returns the number of Records in the dictionary
+    public int size() {
+        return bst.size();
+    }
+
+    // Returns a lazy iterator over the Records in increasing key order
+    public Iterator<Record> iterator() {
+        return new BSTIterator(bst, null, null, false);
+    }
+
+    // Returns a lazy iterator over the Records in decreasing key order
+    public Iterator<Record> descendingIterator() {
+        return new BSTIterator(bst, null, null, true);
+    }
+
+    // Returns a lazy iterator, in increasing key order, over the Records whose Keys are at
+    // least fromKey and less than toKey. A null bound leaves that side of the range open.
+    public Iterator<Record> iterator(Key fromKey, Key toKey) {
+        return new BSTIterator(bst, fromKey, toKey, false);
+    }
+
+    // Returns a spliterator over the Records that splits the work by subtree
+    public Spliterator<Record> spliterator() {
+        return new BSTSpliterator(bst);
+    }
+
+    // Returns a sequential stream of the Records in increasing key order
+    public Stream<Record> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    // Returns a parallel stream of the Records, split by subtree
+    public Stream<Record> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // Returns the records whose Keys are at least fromKey and less than toKey, in key order.
+    // Runs in O(log n + k) for k matching records.
+    public List<Record> range(Key fromKey, Key toKey) {
         List<Record> matchedRecords = new ArrayList<>();
-        inOrderTraversalForPrefix(bst.getRoot(), prefix.toLowerCase(), matchedRecords);
+        bst.scan(fromKey, k -> k.compareTo(toKey) < 0, matchedRecords);
         return matchedRecords;
     }
 
-    // Helper method for in-order traversal to find records starting with a prefix
-    private void inOrderTraversalForPrefix(BSTNode node, String prefix, List<Record> matchedRecords) {
-        if (node != null && node.getRecord() != null) {
-            inOrderTraversalForPrefix(node.getLeftChild(), prefix, matchedRecords);
-            if (node.getRecord().getKey().getLabel().startsWith(prefix)) {
-                matchedRecords.add(node.getRecord());
-            }
-            inOrderTraversalForPrefix(node.getRightChild(), prefix, matchedRecords);
+    // Returns the number of Records whose Keys are smaller than k, in O(log n)
+    public int rank(Key k) {
+        return bst.rank(k);
+    }
+
+    // Returns the Record with the i-th smallest Key, counting from 0, in O(log n).
+    // Returns null if i is not between 0 and size() - 1.
+    public Record select(int i) {
+        BSTNode node = bst.select(i);
+        return node != null ? node.getRecord() : null;
+    }
+
+    // Returns the number of Records whose Keys are at least fromKey and less than toKey, in O(log n)
+    public int countRange(Key fromKey, Key toKey) {
+        return Math.max(0, bst.rank(toKey) - bst.rank(fromKey));
+    }
+
+    // Returns the number of Records whose labels start with the given prefix, in O(log n),
+    // or in time proportional to the prefix length with the prefix index
+    public int countPrefix(String prefix) {
+        String lowerPrefix = prefix.toLowerCase();
+        if (prefixIndex != null) {
+            return prefixIndex.countPrefix(lowerPrefix);
+        }
+        return prefixEnd(lowerPrefix) - bst.rank(new Key(lowerPrefix, Integer.MIN_VALUE));
+    }
+
+    // Returns the page of at most limit records starting with a given prefix that begins at
+    // the offset-th such record, in O(log n + limit)
+    List<Record> getRecordsStartingWith(String prefix, int offset, int limit) {
+        List<Record> matchedRecords = new ArrayList<>();
+        String lowerPrefix = prefix.toLowerCase();
+        int first = bst.rank(new Key(lowerPrefix, Integer.MIN_VALUE)) + Math.max(0, offset);
+        int end = prefixEnd(lowerPrefix);
+        BSTNode node = first < end ? bst.select(first) : null;
+        for (int i = first; node != null && i < end && matchedRecords.size() < limit; i++) {
+            matchedRecords.add(node.getRecord());
+            node = bst.next(node);
+        }
+        return matchedRecords;
+    }
+
+    // Returns the number of Records whose labels are smaller than or start with the prefix,
+    // which is the position in key order just past the last label with the prefix
+    private int prefixEnd(String lowerPrefix) {
+        return bst.countBefore(k -> k.getLabel().startsWith(lowerPrefix) || k.getLabel().compareTo(lowerPrefix) < 0);
+    }
+
+    // Returns a list of records starting with a given prefix.
+    // Scans only from the first key with the prefix to the last one, in O(log n + k),
+    // or walks the matching subtree of the prefix index when it is enabled.
+    List<Record> getRecordsStartingWith(String prefix) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long compared = bst.comparisons();
+        String lowerPrefix = prefix.toLowerCase();
+        List<Record> matchedRecords;
+        if (prefixIndex != null) {
+            matchedRecords = prefixIndex.getRecordsStartingWith(lowerPrefix);
+        } else {
+            matchedRecords = new ArrayList<>();
+            bst.scan(new Key(lowerPrefix, Integer.MIN_VALUE), k -> k.getLabel().startsWith(lowerPrefix), matchedRecords);
+        }
+        if (metrics != null) {
+            metrics.record(DictionaryMetrics.PREFIX, start, bst.comparisons() - compared);
         }
+        return matchedRecords;
     }
 }
@@ -0,0 +1,56 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class BSTIterator implements Iterator<Record> {
+    private final BinarySearchTree tree;
+    private final Key from, to;
+    private final boolean descending;
+    private BSTNode next;
+
+    // Constructor: Iterates lazily over the records of tree whose keys are at least from and
+    // less than to (a null bound leaves that side open), in increasing key order or in
+    // decreasing key order when descending is true. Only the next node is remembered and
+    // the walk follows parent links, so the iterator takes constant extra memory.
+    // The tree must not be modified while it is being iterated.
+    public BSTIterator(BinarySearchTree tree, Key from, Key to, boolean descending) {
+        this.tree = tree;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+        BSTNode root = tree.getRoot();
+        if (descending) {
+            next = to == null ? tree.largest(root) : tree.lower(root, to);
+        } else {
+            next = from == null ? tree.smallest(root) : tree.ceiling(root, from);
+        }
+        if (next != null && !inRange(next)) {
+            next = null;
+        }
+    }
+
+    // Checks whether there are more records to iterate over
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    // Returns the next record and advances to the one after it
+    @Override
+    public Record next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Record record = next.getRecord();
+        next = descending ? tree.previous(next) : tree.next(next);
+        if (next != null && !inRange(next)) {
+            next = null;
+        }
+        return record;
+    }
+
+    // Checks whether the node lies on the far side of the bound the iteration is heading to
+    private boolean inRange(BSTNode node) {
+        Key k = node.getRecord().getKey();
+        return descending ? from == null || k.compareTo(from) >= 0 : to == null || k.compareTo(to) < 0;
+    }
+}
@@ -1,6 +1,8 @@
 public class BSTNode {
     private Record item;
     private BSTNode leftChild, rightChild, parent;
+    private int height;
+    private int size;
  
     // Constructor: Creates a BSTNode with the given Record
     public BSTNode(Record item) {
@@ -8,6 +10,8 @@ public class BSTNode {
         this.leftChild = null;
         this.rightChild = null;
         this.parent = null;
+        this.height = 1;
+        this.size = 1;
     }
 
     // Returns the Record stored in the node
@@ -56,6 +60,26 @@ public class BSTNode {
         this.parent = u;
     }
 
+    // Returns the height of the subtree rooted at the node (a leaf has height 1)
+    public int getHeight() {
+        return height;
+    }
+
+    // Sets the height of the subtree rooted at the node
+    public void setHeight(int h) {
+        this.height = h;
+    }
+
+    // Returns the number of records in the subtree rooted at the node
+    public int getSize() {
+        return size;
+    }
+
+    // Sets the number of records in the subtree rooted at the node
+    public void setSize(int n) {
+        this.size = n;
+    }
+
     // Checks if the node is a leaf (has no children)
     public boolean isLeaf() {
         return leftChild == null && rightChild == null;
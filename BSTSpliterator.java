@@ -0,0 +1,92 @@
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class BSTSpliterator implements Spliterator<Record> {
+    private final BinarySearchTree tree;
+    private BSTNode current;      // next node to visit, or null when exhausted
+    private final BSTNode fence;  // first node not to visit, or null to run to the end
+    private int side;             // 0 for the whole tree, 1 after splitting off a prefix, -1 for a prefix
+    private long estimate;
+
+    // Constructor: Covers all the records of tree in increasing key order.
+    // The tree must not be modified while it is being traversed.
+    public BSTSpliterator(BinarySearchTree tree) {
+        this(tree, tree.smallest(tree.getRoot()), null, 0, tree.size());
+    }
+
+    // Constructor: Covers the nodes from current up to (but not including) fence
+    private BSTSpliterator(BinarySearchTree tree, BSTNode current, BSTNode fence, int side, long estimate) {
+        this.tree = tree;
+        this.current = current;
+        this.fence = fence;
+        this.side = side;
+        this.estimate = estimate;
+    }
+
+    // Splits off the records before the root of the subtree that is still to be visited,
+    // so each half of a split gets one side of a subtree
+    @Override
+    public Spliterator<Record> trySplit() {
+        BSTNode split;
+        if (current == null || current == fence) {
+            split = null;
+        } else if (side == 0) {
+            split = tree.getRoot();
+        } else if (side > 0) {
+            split = current.getRightChild();
+        } else {
+            split = fence != null ? fence.getLeftChild() : null;
+        }
+        if (split == null || split == current || split == fence
+                || current.getRecord().getKey().compareTo(split.getRecord().getKey()) >= 0
+                || fence != null && split.getRecord().getKey().compareTo(fence.getRecord().getKey()) >= 0) {
+            return null;
+        }
+        side = 1;
+        estimate >>>= 1;
+        BSTSpliterator prefix = new BSTSpliterator(tree, current, split, -1, estimate);
+        current = split;
+        return prefix;
+    }
+
+    // Passes the next record to action, returning false when there are none left
+    @Override
+    public boolean tryAdvance(Consumer<? super Record> action) {
+        if (current == null || current == fence) {
+            return false;
+        }
+        Record record = current.getRecord();
+        current = tree.next(current);
+        action.accept(record);
+        return true;
+    }
+
+    // Passes every remaining record to action
+    @Override
+    public void forEachRemaining(Consumer<? super Record> action) {
+        while (current != null && current != fence) {
+            Record record = current.getRecord();
+            current = tree.next(current);
+            action.accept(record);
+        }
+    }
+
+    // Returns the number of records left, which is exact only before the first split
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return (side == 0 ? Spliterator.SIZED : 0)
+                | Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+
+    // Returns the key order the records are traversed in
+    @Override
+    public Comparator<Record> getComparator() {
+        return (a, b) -> a.getKey().compareTo(b.getKey());
+    }
+}
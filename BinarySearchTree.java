@@ -1,5 +1,27 @@
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
 public class BinarySearchTree {
     private BSTNode root;
+
+    // Largest share of a subtree's records that one child subtree may hold before the
+    // subtree is rebuilt after an insert or remove; 0 turns rebuilding off
+    private double rebuildAlpha;
+
+    // Whether lookups move the node they reach to the root
+    private boolean splaying;
+
+    // Whether other threads read the shape of the tree (see setShared)
+    private boolean shared;
+
+    // Number of key comparisons made by searches, inserts and removes so far
+    private long comparisons;
+
+    // Counts the changes begun and finished on a shared tree, so it is odd while a change is
+    // in progress; readers that walk the tree without its monitor check it (see tryDepthCounts)
+    private volatile long version;
     
     // Constructor: Initializes an empty binary search tree
     public BinarySearchTree() {
@@ -10,116 +32,791 @@ public class BinarySearchTree {
     public BSTNode getRoot() {
         return root;
     }
+
+    // Returns the number of records in the tree
+    public int size() {
+        return size(root);
+    }
+
+    // Returns the number of nodes on the longest path from the root, 0 for an empty tree
+    public int height() {
+        return height(root);
+    }
+
+    // Returns the version of a shared tree, which changes with every insert, remove, build
+    // and splay, and is odd while one is in progress
+    public long version() {
+        return version;
+    }
+
+    /*
+     * Lets other threads read the shape of the tree while one thread changes it. Once
+     * shared, every insert, remove, build and splay holds the tree's monitor, so a reader
+     * that synchronizes on the tree (as DictionaryMetrics does) never sees a rotation or
+     * rebuild half done, and bumps the tree's version before and after, so a reader can
+     * also walk the tree without the monitor and check that nothing changed meanwhile
+     * (see tryDepthCounts). Only the shape may be read this way; lookups and iteration
+     * still belong to the thread that changes the tree.
+     * @param shared true to guard changes with the tree's monitor.
+     */
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    // Returns the number of key comparisons made by searches, inserts and removes so far;
+    // the difference across an operation is the number it made
+    public long comparisons() {
+        return comparisons;
+    }
     
-    // Recursively retrieves a node with the specified key from the tree
+    // Retrieves a node with the specified key from the tree. When splaying, the node
+    // reached last (the one found, or where the search fell off) is moved to the root.
     public BSTNode get(BSTNode r, Key k) {
-        if (r == null || r.getRecord() == null) {
-            return null;
+        BSTNode last = null, found = null;
+        int compared = 0;
+        while (r != null && r.getRecord() != null) {
+            last = r;
+            compared++;
+            int compareResult = k.compareTo(r.getRecord().getKey());
+            if (compareResult < 0) {
+                r = r.getLeftChild();
+            } else if (compareResult > 0) {
+                r = r.getRightChild();
+            } else {
+                found = r;
+                break;
+            }
+        }
+        comparisons += compared;
+        if (splaying && last != null) {
+            splay(last);
+        }
+        return found;
+    }
+    
+    // Looks up keys, which must be in increasing order, storing in found[i] the node holding
+    // the i-th key or null if it is absent. Each search starts where the previous one ended
+    // and climbs only until the key is below the upper bound of the subtree, so neighbouring
+    // keys share the upper part of their paths instead of each descending from the root.
+    public void getSorted(List<Key> keys, BSTNode[] found) {
+        BSTNode finger = root;
+        for (int i = 0; i < keys.size(); i++) {
+            Key k = keys.get(i);
+            BSTNode node = climb(finger, k);
+            int compared = 0;
+            found[i] = null;
+            while (node != null) {
+                finger = node;
+                compared++;
+                int compareResult = k.compareTo(node.getRecord().getKey());
+                if (compareResult == 0) {
+                    found[i] = node;
+                    break;
+                }
+                node = compareResult < 0 ? node.getLeftChild() : node.getRightChild();
+            }
+            comparisons += compared;
         }
-        int compareResult = k.compareTo(r.getRecord().getKey());
-        if (compareResult < 0) {
-            return get(r.getLeftChild(), k);
-        } else if (compareResult > 0) {
-            return get(r.getRightChild(), k);
+    }
+
+    // Inserts records, which must be in increasing key order, in one walk like getSorted:
+    // each new node is hung where the search for its key stopped. Stores in inserted[i]
+    // whether the i-th record went in, which it does not when its key is already present.
+    public void insertSorted(List<Record> records, boolean[] inserted) {
+        if (shared) {
+            synchronized (this) {
+                beginChange();
+                try {
+                    insertEach(records, inserted);
+                } finally {
+                    version++;
+                }
+            }
+        } else {
+            insertEach(records, inserted);
+        }
+    }
+
+    // Helper method for insertSorted
+    private void insertEach(List<Record> records, boolean[] inserted) {
+        BSTNode finger = root;
+        for (int i = 0; i < records.size(); i++) {
+            Record d = records.get(i);
+            inserted[i] = false;
+            if (root == null) {
+                root = new BSTNode(d);
+                finger = root;
+                inserted[i] = true;
+                continue;
+            }
+            BSTNode node = climb(finger, d.getKey());
+            while (true) {
+                comparisons++;
+                int compareResult = d.getKey().compareTo(node.getRecord().getKey());
+                if (compareResult == 0) {
+                    finger = node;
+                    break;
+                }
+                BSTNode child = compareResult < 0 ? node.getLeftChild() : node.getRightChild();
+                if (child == null) {
+                    // The new node is the finger for the next, larger key; rebalancing
+                    // moves nodes around but never replaces them
+                    finger = new BSTNode(d);
+                    if (compareResult < 0) {
+                        node.setLeftChild(finger);
+                    } else {
+                        node.setRightChild(finger);
+                    }
+                    retrace(node);
+                    inserted[i] = true;
+                    break;
+                }
+                node = child;
+            }
+        }
+    }
+
+    // Removes the nodes with the given keys, which must be in increasing order, in one walk
+    // like getSorted. Stores in removed[i] whether the i-th key was found and removed.
+    public void removeSorted(List<Key> keys, boolean[] removed) {
+        if (shared) {
+            synchronized (this) {
+                beginChange();
+                try {
+                    removeEach(keys, removed);
+                } finally {
+                    version++;
+                }
+            }
         } else {
-            return r;
+            removeEach(keys, removed);
+        }
+    }
+
+    // Helper method for removeSorted
+    private void removeEach(List<Key> keys, boolean[] removed) {
+        BSTNode finger = root;
+        for (int i = 0; i < keys.size(); i++) {
+            Key k = keys.get(i);
+            BSTNode node = climb(finger, k);
+            removed[i] = false;
+            while (node != null) {
+                finger = node;
+                comparisons++;
+                int compareResult = k.compareTo(node.getRecord().getKey());
+                if (compareResult == 0) {
+                    // Continue from the predecessor: its key is below the next one, which
+                    // keeps the climb correct however the removal reshapes the tree
+                    finger = previous(node);
+                    unlink(node);
+                    removed[i] = true;
+                    break;
+                }
+                node = compareResult < 0 ? node.getLeftChild() : node.getRightChild();
+            }
+            if (finger == null) {
+                finger = root;
+            }
+        }
+    }
+
+    // Returns the node below which a search for k continues from finger, which must hold a key
+    // not larger than k or be where the search for such a key ended. Climbs only until k is
+    // below the upper bound of the subtree, so neighbouring keys share the upper part of
+    // their paths instead of each starting at the root.
+    private BSTNode climb(BSTNode finger, Key k) {
+        BSTNode node = finger;
+        while (node != null && node.getParent() != null) {
+            BSTNode parent = node.getParent();
+            if (parent.getLeftChild() == node) {
+                comparisons++;
+                if (k.compareTo(parent.getRecord().getKey()) < 0) {
+                    break;
+                }
+            }
+            node = parent;
+        }
+        return node;
+    }
+
+    // Retrieves the node whose key is (label, type) without allocating a Key for the lookup,
+    // unless the label has characters that only String.toLowerCase folds correctly
+    public BSTNode get(BSTNode r, CharSequence label, int type) {
+        if (!Key.foldsPerChar(label)) {
+            return get(r, new Key(label.toString(), type));
+        }
+        BSTNode last = null, found = null;
+        int compared = 0;
+        while (r != null) {
+            last = r;
+            compared++;
+            int compareResult = Key.compare(label, type, r.getRecord().getKey());
+            if (compareResult < 0) {
+                r = r.getLeftChild();
+            } else if (compareResult > 0) {
+                r = r.getRightChild();
+            } else {
+                found = r;
+                break;
+            }
+        }
+        comparisons += compared;
+        if (splaying && last != null) {
+            splay(last);
         }
+        return found;
     }
     
+    // Marks the start of a change to a shared tree, made holding its monitor. The fence keeps
+    // the change's writes from becoming visible before the odd version.
+    private void beginChange() {
+        version++;
+        VarHandle.releaseFence();
+    }
+
     // Inserts a new record into the tree, throwing an exception if the key already exists
     public void insert(BSTNode r, Record d) throws DictionaryException {
+        if (shared) {
+            synchronized (this) {
+                beginChange();
+                try {
+                    insert(d);
+                } finally {
+                    version++;
+                }
+            }
+        } else {
+            insert(d);
+        }
+    }
+
+    // Helper method that inserts a new record, counting the comparisons made
+    private void insert(Record d) throws DictionaryException {
         if (root == null) {
-        	root = new BSTNode(d);
+            root = new BSTNode(d);
             return;
         }
-        int compareResult = d.getKey().compareTo(r.getRecord().getKey());
-        if (compareResult < 0) {
-            if (r.getLeftChild() == null) {
-                r.setLeftChild(new BSTNode(d));
-            } else {
-                insert(r.getLeftChild(), d);
-            }
-        } else if (compareResult > 0) {
-            if (r.getRightChild() == null) {
-                r.setRightChild(new BSTNode(d));
+        BSTNode current = root;
+        while (true) {
+            comparisons++;
+            int compareResult = d.getKey().compareTo(current.getRecord().getKey());
+            if (compareResult < 0) {
+                if (current.getLeftChild() == null) {
+                    current.setLeftChild(new BSTNode(d));
+                    break;
+                }
+                current = current.getLeftChild();
+            } else if (compareResult > 0) {
+                if (current.getRightChild() == null) {
+                    current.setRightChild(new BSTNode(d));
+                    break;
+                }
+                current = current.getRightChild();
             } else {
-                insert(r.getRightChild(), d);
+                throw new DictionaryException("Record with the same key already exists");
             }
-        } else {
-            throw new DictionaryException("Record with the same key already exists");
         }
+        retrace(current);
     }
     
     // Removes a node with the specified key from the tree
     public void remove(BSTNode root, Key k) throws DictionaryException {
-        this.root = removeRecursive(this.root, k);
+        if (shared) {
+            synchronized (this) {
+                beginChange();
+                try {
+                    remove(k);
+                } finally {
+                    version++;
+                }
+            }
+        } else {
+            remove(k);
+        }
     }
 
-    
-    // Helper method for recursively removing a node from the tree
-    private BSTNode removeRecursive(BSTNode node, Key k) throws DictionaryException {
+    // Helper method that removes the node with key k, counting the comparisons made
+    private void remove(Key k) throws DictionaryException {
+        BSTNode node = this.root;
+        while (node != null) {
+            comparisons++;
+            int compareResult = k.compareTo(node.getRecord().getKey());
+            if (compareResult == 0) {
+                break;
+            }
+            node = compareResult < 0 ? node.getLeftChild() : node.getRightChild();
+        }
         if (node == null) {
             throw new DictionaryException("Key not found in the dictionary");
         }
+        unlink(node);
+    }
+
+    // Takes the record of node out of the tree and rebalances the ancestors of the change
+    private void unlink(BSTNode node) {
+        // Two children: keep descending to the smallest node of the right subtree,
+        // move its record up and unlink that node instead
+        if (node.getLeftChild() != null && node.getRightChild() != null) {
+            BSTNode smallestNode = node.getRightChild();
+            while (smallestNode.getLeftChild() != null) {
+                smallestNode = smallestNode.getLeftChild();
+            }
+            node.setRecord(smallestNode.getRecord());
+            node = smallestNode;
+        }
 
-        int compareResult = k.compareTo(node.getRecord().getKey());
-        if (compareResult < 0) {
-            node.setLeftChild(removeRecursive(node.getLeftChild(), k));
-        } else if (compareResult > 0) {
-            node.setRightChild(removeRecursive(node.getRightChild(), k));
+        // The node now has at most one child, which takes its place
+        BSTNode child = node.getLeftChild() != null ? node.getLeftChild() : node.getRightChild();
+        BSTNode parent = node.getParent();
+        if (parent == null) {
+            this.root = child;
+            if (child != null) {
+                child.setParent(null);
+            }
+        } else if (parent.getLeftChild() == node) {
+            parent.setLeftChild(child);
         } else {
-            // Case 1: No child or one child
-            if (node.getLeftChild() == null) {
-                return node.getRightChild();
-            } else if (node.getRightChild() == null) {
-                return node.getLeftChild();
+            parent.setRightChild(child);
+        }
+        retrace(parent);
+    }
+
+    /*
+     * Turns on scapegoat-style rebuilding: after each insert or remove, the highest
+     * ancestor of the change whose larger child subtree holds more than alpha of its
+     * records is rebuilt into a perfectly balanced subtree. This keeps the height within
+     * log(n) / log(1 / alpha) plus a constant and the amortized cost of every operation
+     * logarithmic, using only the subtree sizes the nodes already keep.
+     * @param alpha A value between 0.5 (rebuild at the slightest imbalance) and 1
+     *              (never rebuild); 0 turns rebuilding off again.
+     */
+    public void setRebuildAlpha(double alpha) {
+        if (alpha != 0 && (alpha <= 0.5 || alpha >= 1)) {
+            throw new IllegalArgumentException("alpha must be between 0.5 and 1, or 0 to disable rebuilding");
+        }
+        if (alpha != 0 && splaying) {
+            throw new IllegalStateException("Splaying is on; turn it off before rebuilding");
+        }
+        this.rebuildAlpha = alpha;
+    }
+
+    // Walks from node up to the root, rebalancing every ancestor of a changed subtree,
+    // then rebuilds the highest ancestor found out of balance, if rebuilding is on
+    private void retrace(BSTNode node) {
+        BSTNode scapegoat = null;
+        while (node != null) {
+            BSTNode parent = node.getParent();
+            boolean isLeftChild = parent != null && parent.getLeftChild() == node;
+            BSTNode subtree = rebalance(node);
+            attach(parent, isLeftChild, subtree);
+            if (rebuildAlpha > 0 && Math.max(size(subtree.getLeftChild()), size(subtree.getRightChild()))
+                    > rebuildAlpha * subtree.getSize()) {
+                scapegoat = subtree;
             }
+            node = parent;
+        }
+        if (scapegoat != null) {
+            rebuild(scapegoat);
+        }
+    }
 
-            // Case 2: Two children
-            // Find the smallest node in the right subtree
-            BSTNode smallestNode = smallest(node.getRightChild());
-            node.setRecord(smallestNode.getRecord());
-            node.setRightChild(removeRecursive(node.getRightChild(), smallestNode.getRecord().getKey()));
+    // Rebuilds the subtree rooted at node into a perfectly balanced one in place, relinking
+    // its nodes in key order without allocating new ones. The ancestors keep their sizes
+    // but may become lower.
+    private void rebuild(BSTNode node) {
+        BSTNode parent = node.getParent();
+        boolean isLeftChild = parent != null && parent.getLeftChild() == node;
+        BSTNode[] nodes = new BSTNode[node.getSize()];
+        BSTNode current = smallest(node);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = current;
+            current = next(current);
+        }
+        attach(parent, isLeftChild, relink(nodes, 0, nodes.length - 1));
+        for (BSTNode ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+            update(ancestor);
+        }
+    }
+
+    // Hangs subtree where a child of parent used to be: on its left when isLeftChild,
+    // or at the root when parent is null
+    private void attach(BSTNode parent, boolean isLeftChild, BSTNode subtree) {
+        if (parent == null) {
+            root = subtree;
+            subtree.setParent(null);
+        } else if (isLeftChild) {
+            parent.setLeftChild(subtree);
+        } else {
+            parent.setRightChild(subtree);
         }
-        return node;
     }
 
-    // Finds the successor (next higher key) of a given key in the tree
+    /*
+     * Turns splaying on or off. While it is on, every get moves the node it reaches to the
+     * root with zig-zig and zig-zag rotations, so frequently used keys gather near the top
+     * and a skewed lookup mix gets cheaper over time. Lookups then change the tree, so a
+     * splaying tree must not be read by several threads at once. Splaying and rebuilding
+     * (setRebuildAlpha) work against each other and cannot both be on.
+     * @param splaying true to splay on every get.
+     */
+    public void setSplaying(boolean splaying) {
+        if (splaying && rebuildAlpha > 0) {
+            throw new IllegalStateException("Rebuilding is on; turn it off before splaying");
+        }
+        this.splaying = splaying;
+    }
 
-    public BSTNode successor(BSTNode r, Key k) {
-        BSTNode current = get(r, k);
-        if (current == null) {
+    // Moves node to the root, holding the tree's monitor when the tree is shared
+    private void splay(BSTNode node) {
+        if (shared) {
+            synchronized (this) {
+                beginChange();
+                try {
+                    splayUp(node);
+                } finally {
+                    version++;
+                }
+            }
+        } else {
+            splayUp(node);
+        }
+    }
+
+    // Helper method that moves node to the root, two levels at a time
+    private void splayUp(BSTNode node) {
+        while (node.getParent() != null) {
+            BSTNode parent = node.getParent();
+            BSTNode grandparent = parent.getParent();
+            if (grandparent == null) {
+                rotateUp(node);
+            } else if ((grandparent.getLeftChild() == parent) == (parent.getLeftChild() == node)) {
+                rotateUp(parent);
+                rotateUp(node);
+            } else {
+                rotateUp(node);
+                rotateUp(node);
+            }
+        }
+    }
+
+    // Rotates node above its parent
+    private void rotateUp(BSTNode node) {
+        BSTNode parent = node.getParent();
+        BSTNode grandparent = parent.getParent();
+        boolean isLeftChild = grandparent != null && grandparent.getLeftChild() == parent;
+        attach(grandparent, isLeftChild, parent.getLeftChild() == node ? rotateRight(parent) : rotateLeft(parent));
+    }
+
+    // Helper method that links nodes[lo..hi] into a balanced subtree around its middle node
+    private BSTNode relink(BSTNode[] nodes, int lo, int hi) {
+        if (lo > hi) {
             return null;
         }
-        if (current.getRightChild() != null) {
-            return smallest(current.getRightChild());
+        int mid = (lo + hi) >>> 1;
+        BSTNode node = nodes[mid];
+        node.setLeftChild(relink(nodes, lo, mid - 1));
+        node.setRightChild(relink(nodes, mid + 1, hi));
+        update(node);
+        return node;
+    }
+
+    // Replaces the contents of the tree with a perfectly balanced tree built in linear time
+    // from records sorted in increasing key order with no duplicate keys
+    public void build(List<Record> sorted) {
+        BSTNode built = buildBalanced(sorted, 0, sorted.size() - 1);
+        if (built != null) {
+            built.setParent(null);
+        }
+        if (shared) {
+            synchronized (this) {
+                beginChange();
+                root = built;
+                version++;
+            }
         } else {
-            BSTNode parent = current.getParent();
-            while (parent != null && current == parent.getRightChild()) {
-                current = parent;
-                parent = parent.getParent();
+            root = built;
+        }
+    }
+
+    // Helper method that builds a balanced subtree from sorted[lo..hi] around its middle record.
+    // The recursion depth is only logarithmic in the number of records.
+    private BSTNode buildBalanced(List<Record> sorted, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        BSTNode node = new BSTNode(sorted.get(mid));
+        node.setLeftChild(buildBalanced(sorted, lo, mid - 1));
+        node.setRightChild(buildBalanced(sorted, mid + 1, hi));
+        update(node);
+        return node;
+    }
+
+    // Returns all records of the tree in increasing key order
+    public List<Record> records() {
+        List<Record> records = new ArrayList<>(size());
+        for (BSTNode node = smallest(root); node != null; node = next(node)) {
+            records.add(node.getRecord());
+        }
+        return records;
+    }
+
+    // Returns the number of nodes at each depth, the root being at depth 0, so the length
+    // of the result is the height of the tree. Visits the tree level by level in O(n).
+    public int[] depthCounts() {
+        return depthCounts(root, Integer.MAX_VALUE);
+    }
+
+    // Returns depthCounts() for a thread other than the one changing a shared tree, walking
+    // the tree without its monitor so that the change is not held up for O(n). The walk is
+    // kept only if the tree was at the given even version throughout; otherwise, or if the
+    // version is odd, it returns null and the caller may try again with a newer version.
+    // A walk racing a change may see a node twice, so it gives up past the tree's size.
+    public int[] tryDepthCounts(long version) {
+        if ((version & 1) != 0) {
+            return null;
+        }
+        BSTNode top = root;
+        int[] counts = depthCounts(top, size(top));
+        VarHandle.acquireFence();
+        return this.version == version ? counts : null;
+    }
+
+    // Helper method that counts the nodes at each depth below top, or returns null once it
+    // has seen more than limit of them
+    private static int[] depthCounts(BSTNode top, int limit) {
+        List<Integer> counts = new ArrayList<>();
+        List<BSTNode> level = new ArrayList<>();
+        if (top != null) {
+            level.add(top);
+        }
+        int seen = 0;
+        while (!level.isEmpty()) {
+            seen += level.size();
+            if (seen > limit) {
+                return null;
+            }
+            counts.add(level.size());
+            List<BSTNode> below = new ArrayList<>();
+            for (BSTNode node : level) {
+                BSTNode left = node.getLeftChild(), right = node.getRightChild();
+                if (left != null) {
+                    below.add(left);
+                }
+                if (right != null) {
+                    below.add(right);
+                }
             }
-            return parent;
+            level = below;
         }
+        int[] result = new int[counts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    // Returns the number of records whose keys are smaller than k
+    public int rank(Key k) {
+        return countBefore(key -> key.compareTo(k) < 0);
+    }
+
+    // Returns the number of records whose keys satisfy before, which must hold for every key
+    // up to some point in key order and for none after it. Descends once, using subtree sizes.
+    public int countBefore(Predicate<Key> before) {
+        int count = 0, compared = 0;
+        BSTNode node = root;
+        while (node != null) {
+            compared++;
+            if (before.test(node.getRecord().getKey())) {
+                count += size(node.getLeftChild()) + 1;
+                node = node.getRightChild();
+            } else {
+                node = node.getLeftChild();
+            }
+        }
+        comparisons += compared;
+        return count;
+    }
+
+    // Returns the node holding the i-th smallest key (counting from 0), or null if i is out of range
+    public BSTNode select(int i) {
+        BSTNode node = root;
+        while (node != null) {
+            int leftSize = size(node.getLeftChild());
+            if (i < leftSize) {
+                node = node.getLeftChild();
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                node = node.getRightChild();
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    // Appends to out, in increasing key order, the records from the first key greater than or
+    // equal to from up to (but not including) the first key that is no longer inRange.
+    // Descends once to from and then follows the in-order links, in O(log n + k).
+    public void scan(Key from, Predicate<Key> inRange, List<Record> out) {
+        for (BSTNode node = ceiling(root, from); node != null; node = next(node)) {
+            if (!inRange.test(node.getRecord().getKey())) {
+                return;
+            }
+            out.add(node.getRecord());
+        }
+    }
+
+    // Restores the balance of the subtree rooted at node after one of its children changed,
+    // returning the new root of the subtree. A plain binary search tree only refreshes the
+    // information node keeps about its subtree.
+    protected BSTNode rebalance(BSTNode node) {
+        update(node);
+        return node;
+    }
+
+    // Recomputes the size and height of node from those of its children after they changed
+    protected void update(BSTNode node) {
+        node.setSize(1 + size(node.getLeftChild()) + size(node.getRightChild()));
+        node.setHeight(1 + Math.max(height(node.getLeftChild()), height(node.getRightChild())));
+    }
+
+    // Returns the number of records in a subtree, where an empty subtree has none
+    protected static int size(BSTNode node) {
+        return node == null ? 0 : node.getSize();
+    }
+
+    // Returns the height of a subtree, where an empty subtree has height 0
+    protected static int height(BSTNode node) {
+        return node == null ? 0 : node.getHeight();
+    }
+
+    // Rotates the subtree rooted at node to the left and returns the new root of the subtree.
+    // The caller attaches the returned node where node used to hang.
+    protected BSTNode rotateLeft(BSTNode node) {
+        BSTNode pivot = node.getRightChild();
+        node.setRightChild(pivot.getLeftChild());
+        pivot.setLeftChild(node);
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    // Rotates the subtree rooted at node to the right and returns the new root of the subtree.
+    // The caller attaches the returned node where node used to hang.
+    protected BSTNode rotateRight(BSTNode node) {
+        BSTNode pivot = node.getLeftChild();
+        node.setLeftChild(pivot.getRightChild());
+        pivot.setRightChild(node);
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    // Finds the successor (next higher key) of a given key in the tree.
+    // The key does not need to be in the tree.
+
+    public BSTNode successor(BSTNode r, Key k) {
+        return higher(r, k);
     }
     
-    // Finds the predecessor (next lower key) of a given key in the tree
+    // Finds the predecessor (next lower key) of a given key in the tree.
+    // The key does not need to be in the tree.
 
     public BSTNode predecessor(BSTNode r, Key k) {
-        BSTNode current = get(r, k);
-        if (current == null) {
-            return null;
+        return lower(r, k);
+    }
+
+    // Finds the node with the smallest key greater than or equal to k
+    public BSTNode ceiling(BSTNode r, Key k) {
+        return above(r, k, true);
+    }
+
+    // Finds the node with the smallest key strictly greater than k
+    public BSTNode higher(BSTNode r, Key k) {
+        return above(r, k, false);
+    }
+
+    // Finds the node with the largest key less than or equal to k
+    public BSTNode floor(BSTNode r, Key k) {
+        return below(r, k, true);
+    }
+
+    // Finds the node with the largest key strictly less than k
+    public BSTNode lower(BSTNode r, Key k) {
+        return below(r, k, false);
+    }
+
+    // Helper method that descends once from r, remembering the last node whose key was
+    // above k (or equal to it when inclusive) before turning left
+    private BSTNode above(BSTNode r, Key k, boolean inclusive) {
+        BSTNode candidate = null;
+        int compared = 0;
+        while (r != null) {
+            compared++;
+            int compareResult = k.compareTo(r.getRecord().getKey());
+            if (compareResult == 0 && inclusive) {
+                candidate = r;
+                break;
+            } else if (compareResult < 0) {
+                candidate = r;
+                r = r.getLeftChild();
+            } else {
+                r = r.getRightChild();
+            }
         }
-        if (current.getLeftChild() != null) {
-            return largest(current.getLeftChild());
-        } else {
-            BSTNode parent = current.getParent();
-            while (parent != null && current == parent.getLeftChild()) {
-                current = parent;
-                parent = parent.getParent();
+        comparisons += compared;
+        return candidate;
+    }
+
+    // Helper method that descends once from r, remembering the last node whose key was
+    // below k (or equal to it when inclusive) before turning right
+    private BSTNode below(BSTNode r, Key k, boolean inclusive) {
+        BSTNode candidate = null;
+        int compared = 0;
+        while (r != null) {
+            compared++;
+            int compareResult = k.compareTo(r.getRecord().getKey());
+            if (compareResult == 0 && inclusive) {
+                candidate = r;
+                break;
+            } else if (compareResult > 0) {
+                candidate = r;
+                r = r.getRightChild();
+            } else {
+                r = r.getLeftChild();
             }
-            return parent;
         }
+        comparisons += compared;
+        return candidate;
+    }
+    
+    // Returns the node that follows n in key order, or null if n holds the largest key.
+    // Follows child and parent links, so it takes constant extra memory.
+    public BSTNode next(BSTNode n) {
+        if (n.getRightChild() != null) {
+            return smallest(n.getRightChild());
+        }
+        BSTNode parent = n.getParent();
+        while (parent != null && n == parent.getRightChild()) {
+            n = parent;
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+
+    // Returns the node that precedes n in key order, or null if n holds the smallest key
+    public BSTNode previous(BSTNode n) {
+        if (n.getLeftChild() != null) {
+            return largest(n.getLeftChild());
+        }
+        BSTNode parent = n.getParent();
+        while (parent != null && n == parent.getLeftChild()) {
+            n = parent;
+            parent = parent.getParent();
+        }
+        return parent;
     }
     
     // Finds the smallest key node in a subtree
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+public class ConcurrentBSTDictionary implements BSTDictionaryADT {
+    // Lock-free ordered map: lookups never block and never wait for writers, and writers
+    // only contend with each other when they touch neighbouring keys
+    private final ConcurrentSkipListMap<Key, Record> records;
+
+    // Constructor: Initializes an empty dictionary that is safe to share between threads
+    public ConcurrentBSTDictionary() {
+        this.records = new ConcurrentSkipListMap<>();
+    }
+
+    // Returns the Record with the specified Key.
+    // Returns null if the Record is not in the dictionary.
+    public Record get(Key k) {
+        return records.get(k);
+    }
+
+    // Inserts a Record into the ordered dictionary.
+    // Throws a DictionaryException if a Record with the same Key already exists.
+    public void put(Record d) throws DictionaryException {
+        if (records.putIfAbsent(d.getKey(), d) != null) {
+            throw new DictionaryException("Record with the same key already exists");
+        }
+    }
+
+    // Removes the Record with the specified Key from the dictionary.
+    // Throws a DictionaryException if the Record is not in the dictionary.
+    public void remove(Key k) throws DictionaryException {
+        if (records.remove(k) == null) {
+            throw new DictionaryException("Key not found in the dictionary");
+        }
+    }
+
+    // Returns the successor of the specified Key, which does not need to be in the dictionary.
+    // Returns null if the Key has no successor.
+    public Record successor(Key k) {
+        return valueOf(records.higherEntry(k));
+    }
+
+    // Returns the predecessor of the specified Key, which does not need to be in the dictionary.
+    // Returns null if the Key has no predecessor.
+    public Record predecessor(Key k) {
+        return valueOf(records.lowerEntry(k));
+    }
+
+    // Returns the Record with the smallest Key in the dictionary.
+    // Returns null if the dictionary is empty.
+    public Record smallest() {
+        return valueOf(records.firstEntry());
+    }
+
+    // Returns the Record with the largest Key in the dictionary.
+    // Returns null if the dictionary is empty.
+    public Record largest() {
+        return valueOf(records.lastEntry());
+    }
+
+    // Returns the number of Records in the dictionary. This walks the whole map, and the
+    // result may already be stale when other threads are writing.
+    public int size() {
+        return records.size();
+    }
+
+    // Returns a list of records starting with a given prefix, as seen by a weakly
+    // consistent scan that starts at the first label with the prefix
+    List<Record> getRecordsStartingWith(String prefix) {
+        List<Record> matchedRecords = new ArrayList<>();
+        String lowerPrefix = prefix.toLowerCase();
+        for (Record record : records.tailMap(new Key(lowerPrefix, Integer.MIN_VALUE)).values()) {
+            if (!record.getKey().getLabel().startsWith(lowerPrefix)) {
+                break;
+            }
+            matchedRecords.add(record);
+        }
+        return matchedRecords;
+    }
+
+    // Returns the Record of a map entry, or null if there is no entry
+    private static Record valueOf(Map.Entry<Key, Record> entry) {
+        return entry != null ? entry.getValue() : null;
+    }
+}
@@ -0,0 +1,155 @@
+public class CountingBloomFilter {
+    // Largest value of a counter; a counter that reaches it is never decremented again,
+    // since it may count more keys than it can hold
+    private static final int SATURATED = 15;
+
+    // 4-bit counters packed 16 to a long; a key is present only if all of its are nonzero
+    private final long[] counters;
+    private final long size;
+    private final int hashes;
+    private final int capacity;
+    private int count;
+    private long queries, negatives, falsePositives;
+
+    /*
+     * Creates an empty filter for up to capacity keys that wrongly reports an absent key as
+     * present with about the given probability. If that takes more than maxBytes, the
+     * filter is made to fit maxBytes instead, at a higher false positive rate.
+     * @param capacity The number of keys the filter is sized for.
+     * @param falsePositiveRate The wanted probability of a false positive, in (0, 1).
+     * @param maxBytes The most memory the counters may take.
+     */
+    public CountingBloomFilter(int capacity, double falsePositiveRate, long maxBytes) {
+        if (capacity <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1) || maxBytes < 8) {
+            throw new IllegalArgumentException("Invalid Bloom filter parameters: capacity " + capacity
+                    + ", false positive rate " + falsePositiveRate + ", memory " + maxBytes);
+        }
+        // Optimal number of counters: -n ln p / (ln 2)^2, two per byte, at most maxBytes and
+        // 2^32 so that every counter can be reached from a 32-bit probe
+        double ln2 = Math.log(2);
+        long wanted = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long words = Math.min((wanted + 15) / 16, Math.min(maxBytes / 8, 1 << 28));
+        this.counters = new long[(int) Math.max(1, words)];
+        this.size = 16L * counters.length;
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) size / capacity * ln2)));
+        this.capacity = capacity;
+    }
+
+    // Adds the key with the given hash code (Key.hashCode or Key.hash)
+    public void add(int hash) {
+        long h = mix(hash);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % size;
+            int shift = (int) (index & 15) << 2;
+            int word = (int) (index >>> 4);
+            if (((counters[word] >>> shift) & 15) < SATURATED) {
+                counters[word] += 1L << shift;
+            }
+        }
+        count++;
+    }
+
+    // Removes the key with the given hash code, which must have been added
+    public void remove(int hash) {
+        long h = mix(hash);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % size;
+            int shift = (int) (index & 15) << 2;
+            int word = (int) (index >>> 4);
+            long counter = (counters[word] >>> shift) & 15;
+            if (counter > 0 && counter < SATURATED) {
+                counters[word] -= 1L << shift;
+            }
+        }
+        count--;
+    }
+
+    // Checks whether the key with the given hash code may have been added. Returns false
+    // only for keys that are certainly absent.
+    public boolean mightContain(int hash) {
+        queries++;
+        long h = mix(hash);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % size;
+            if (((counters[(int) (index >>> 4)] >>> ((int) (index & 15) << 2)) & 15) == 0) {
+                negatives++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Counts a key that mightContain accepted but turned out to be absent
+    void recordFalsePositive() {
+        falsePositives++;
+    }
+
+    // Returns the number of keys in the filter
+    public int count() {
+        return count;
+    }
+
+    // Returns the number of keys the filter was sized for
+    public int capacity() {
+        return capacity;
+    }
+
+    // Checks whether the filter holds more keys than it was sized for, so that its false
+    // positive rate is above the one asked for
+    public boolean isOverloaded() {
+        return count > capacity;
+    }
+
+    // Returns the number of hash functions used per key
+    public int hashes() {
+        return hashes;
+    }
+
+    // Returns the bytes taken by the counters
+    public long memoryFootprint() {
+        return 8L * counters.length;
+    }
+
+    // Returns the expected false positive rate with the current number of keys,
+    // (1 - e^(-kn/m))^k for k hashes, n keys and m counters
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * count / size), hashes);
+    }
+
+    // Returns the number of lookups checked against the filter
+    public long getQueries() {
+        return queries;
+    }
+
+    // Returns the number of lookups the filter answered as certainly absent
+    public long getNegatives() {
+        return negatives;
+    }
+
+    // Returns the number of lookups the filter let through for absent keys
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    // Spreads a 32-bit hash code over 64 bits (the MurmurHash3 finalizer), giving the two
+    // independent hashes that every probe position is derived from
+    private static long mix(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85B53L;
+        return h ^ (h >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bloom filter: %d/%d keys, %d hashes, %d bytes, %.3f%% expected false positives, "
+                + "%d queries, %d rejected, %d false positives",
+                count, capacity, hashes, memoryFootprint(), 100 * expectedFalsePositiveRate(),
+                queries, negatives, falsePositives);
+    }
+}
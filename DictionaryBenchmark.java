@@ -0,0 +1,539 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DictionaryBenchmark {
+    // How long each measurement runs, after a warm-up of the same length
+    private static final long MEASURE_MILLIS = 1000;
+
+    // How long each single-operation measurement runs, after a warm-up of the same length
+    private static final long OPERATION_MILLIS = 100;
+
+    // Dictionary sizes for the operation benchmarks, capped at the number of input records
+    private static final int[] SIZES = {1000, 4000, Integer.MAX_VALUE};
+
+    // Insertion orders for the operation benchmarks
+    private static final String[] ORDERS = {"random", "sorted", "skewed"};
+
+    // Dictionary engines compared by the operation benchmarks
+    private static final String[] ENGINES = {"BST", "AVL", "Concurrent", "Persistent", "Array"};
+
+    // Operations timed by the operation benchmarks, in column order
+    private static final String[] OPERATIONS = {"get", "put", "remove", "successor", "predecessor",
+            "smallest", "largest", "prefix"};
+
+    // Receives the results of the timed operations so the JIT cannot drop them
+    private static volatile int sink;
+
+    /*
+     * Runs the benchmarks on the records of an input file.
+     * This is a plain Java harness: it has no dependencies beyond the dictionary classes,
+     * so it runs with "java DictionaryBenchmark [inputFile] [benchmark...]" in the same
+     * directory. The benchmarks are operations, zipf, misses, scaling, memory and
+     * prefix; all of them run when none is named.
+     * @param args Optional input file name, large.txt by default, then benchmark names.
+     */
+    public static void main(String[] args) throws Exception {
+        String inputFile = args.length > 0 ? args[0] : "large.txt";
+        List<String> selected = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+                : Arrays.asList("operations", "zipf", "misses", "scaling", "memory", "prefix");
+        List<Record> records = DictionaryLoader.readRecords(inputFile);
+        System.out.println("Loaded " + records.size() + " records from " + inputFile);
+        if (selected.contains("operations")) {
+            operations(records);
+        }
+        if (selected.contains("zipf")) {
+            zipfLookups(records);
+        }
+        if (selected.contains("misses")) {
+            missLookups(records);
+        }
+        if (selected.contains("scaling")) {
+            concurrentScaling(records);
+        }
+        if (selected.contains("memory")) {
+            memoryFootprint(records);
+        }
+        if (selected.contains("prefix")) {
+            prefixIndex(records);
+        }
+    }
+
+    /*
+     * Times every dictionary operation on each engine, for each insertion order and size.
+     * A sample of the records is inserted in random order, in key order, or in a skewed
+     * order (key order with one record in twenty moved to a random place). Every tenth
+     * record of the order is held back to time put and remove. Lookups use the keys in
+     * random order; prefix listings use the two-letter prefixes of the labels.
+     * @param records The records to sample the dictionaries from.
+     */
+    static void operations(List<Record> records) throws DictionaryException {
+        Random random = new Random(2210);
+        List<Record> shuffled = new ArrayList<>(records);
+        Collections.shuffle(shuffled, random);
+        for (int size : SIZES) {
+            List<Record> sample = shuffled.subList(0, Math.min(size, shuffled.size()));
+            for (String order : ORDERS) {
+                List<Record> ordered = insertionOrder(sample, order, random);
+                System.out.println();
+                System.out.println("Operations on " + ordered.size() + " records inserted in " + order
+                        + " order (ns/op)");
+                System.out.printf("%-11s", "engine");
+                for (String operation : OPERATIONS) {
+                    System.out.printf(" %11s", operation);
+                }
+                System.out.println();
+                for (String engine : ENGINES) {
+                    System.out.printf("%-11s", engine);
+                    for (long nanos : timeOperations(engine, ordered, random)) {
+                        System.out.printf(" %11d", nanos);
+                    }
+                    System.out.println();
+                }
+            }
+            if (size >= records.size()) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Times gets whose keys follow a Zipf distribution, the shape of real query logs where
+     * a few hundred words make up most lookups, on a plain tree, a splaying tree, an AVL
+     * tree and a plain tree behind a 1024-record lookup cache, built from the records in
+     * random order. The popularity ranks are assigned to
+     * the keys at random, so the popular words are spread over the whole key range.
+     * @param records The records to load.
+     */
+    static void zipfLookups(List<Record> records) throws DictionaryException {
+        Random random = new Random(2210);
+        List<Record> shuffled = new ArrayList<>(records);
+        Collections.shuffle(shuffled, random);
+        System.out.println();
+        System.out.println("Zipf-distributed gets over " + records.size() + " records (ns/op)");
+        System.out.printf("%-11s %11s %11s %11s %11s %9s%n", "exponent", "plain", "splay", "AVL", "cached", "hit rate");
+        for (double exponent : new double[] {0.8, 1.0, 1.2}) {
+            int[] samples = zipfSamples(shuffled.size(), exponent, 1 << 20, random);
+            System.out.printf("%-11.1f", exponent);
+            LookupCache cache = null;
+            for (int variant = 0; variant < 4; variant++) {
+                BSTDictionary dictionary = new BSTDictionary(variant == 2);
+                for (Record record : shuffled) {
+                    dictionary.put(record);
+                }
+                if (variant == 1) {
+                    dictionary.setSplaying(true);
+                } else if (variant == 3) {
+                    cache = dictionary.enableCache(1024);
+                }
+                System.out.printf(" %11d", time(i -> dictionary.get(
+                        shuffled.get(samples[i & (samples.length - 1)]).getKey()) != null ? 1 : 0));
+            }
+            System.out.printf(" %8.1f%%%n", 100 * cache.hitRate());
+        }
+    }
+
+    /*
+     * Times gets on a balanced tree with and without a counting Bloom filter, for lookup
+     * mixes where 0%, 50%, 90% and 100% of the words are absent from the dictionary. The
+     * absent words are the stored labels with a suffix, so they descend as deep as the
+     * present ones.
+     * @param records The records to load.
+     */
+    static void missLookups(List<Record> records) throws DictionaryException {
+        Random random = new Random(2410);
+        Key[] present = new Key[records.size()];
+        Key[] absent = new Key[records.size()];
+        for (int i = 0; i < present.length; i++) {
+            present[i] = records.get(i).getKey();
+            absent[i] = new Key(present[i].getLabel() + "qx", present[i].getType());
+        }
+        System.out.println();
+        System.out.println("Gets with absent words over " + records.size() + " records (ns/op)");
+        System.out.printf("%-11s %11s %11s %11s%n", "absent", "no filter", "1% filter", "0.1% filter");
+        for (int missPercent : new int[] {0, 50, 90, 100}) {
+            Key[] queries = new Key[1 << 16];
+            for (int i = 0; i < queries.length; i++) {
+                Key[] source = random.nextInt(100) < missPercent ? absent : present;
+                queries[i] = source[random.nextInt(source.length)];
+            }
+            System.out.printf("%-11s", missPercent + "%");
+            for (double rate : new double[] {0, 0.01, 0.001}) {
+                BSTDictionary dictionary = new BSTDictionary(true);
+                dictionary.bulkLoad(records);
+                dictionary.enableBloomFilter(rate, 1 << 24);
+                System.out.printf(" %11d", time(i -> dictionary.get(queries[i & (queries.length - 1)]) != null ? 1 : 0));
+            }
+            System.out.println();
+        }
+    }
+
+    // Draws count ranks in [0, n) where rank r is picked with probability proportional to
+    // 1 / (r + 1)^exponent, by binary search in the cumulative distribution
+    private static int[] zipfSamples(int n, double exponent, int count, Random random) {
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int r = 0; r < n; r++) {
+            total += 1 / Math.pow(r + 1, exponent);
+            cumulative[r] = total;
+        }
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            samples[i] = Math.min(n - 1, rank >= 0 ? rank : -rank - 1);
+        }
+        return samples;
+    }
+
+    // Returns a copy of the sample arranged in the named insertion order
+    private static List<Record> insertionOrder(List<Record> sample, String order, Random random) {
+        List<Record> ordered = new ArrayList<>(sample);
+        if (order.equals("random")) {
+            return ordered;
+        }
+        ordered.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+        if (order.equals("skewed")) {
+            for (int i = 0; i < ordered.size(); i += 20) {
+                Collections.swap(ordered, i, random.nextInt(ordered.size()));
+            }
+        }
+        return ordered;
+    }
+
+    /*
+     * Builds the named engine from the ordered records and times each operation.
+     * @return The average time of each operation, in the order of OPERATIONS.
+     */
+    private static long[] timeOperations(String engine, List<Record> ordered, Random random)
+            throws DictionaryException {
+        BSTDictionaryADT dictionary = newEngine(engine);
+        List<Record> spare = new ArrayList<>();
+        List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            if (i % 10 == 0) {
+                spare.add(ordered.get(i));
+            } else {
+                dictionary.put(ordered.get(i));
+                keys.add(ordered.get(i).getKey());
+            }
+        }
+        Collections.shuffle(keys, random);
+        List<String> prefixes = new ArrayList<>();
+        for (Key k : keys) {
+            prefixes.add(k.getLabel().substring(0, Math.min(2, k.getLabel().length())));
+        }
+        int n = keys.size();
+        long[] putRemove = timePutRemove(dictionary, spare);
+        return new long[] {
+                time(i -> dictionary.get(keys.get(i % n)) != null ? 1 : 0),
+                putRemove[0],
+                putRemove[1],
+                time(i -> dictionary.successor(keys.get(i % n)) != null ? 1 : 0),
+                time(i -> dictionary.predecessor(keys.get(i % n)) != null ? 1 : 0),
+                time(i -> dictionary.smallest() != null ? 1 : 0),
+                time(i -> dictionary.largest() != null ? 1 : 0),
+                time(i -> listPrefix(dictionary, prefixes.get(i % n)).size())
+        };
+    }
+
+    // Creates an empty dictionary of the named engine
+    private static BSTDictionaryADT newEngine(String engine) {
+        switch (engine) {
+            case "BST":
+                return new BSTDictionary();
+            case "AVL":
+                return new BSTDictionary(true);
+            case "Concurrent":
+                return new ConcurrentBSTDictionary();
+            case "Persistent":
+                return new PersistentBSTDictionary();
+            case "Array":
+                return new ArrayBSTDictionary();
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+
+    // Lists the records starting with prefix through the engine's own prefix listing
+    private static List<Record> listPrefix(BSTDictionaryADT dictionary, String prefix) {
+        if (dictionary instanceof BSTDictionary) {
+            return ((BSTDictionary) dictionary).getRecordsStartingWith(prefix);
+        } else if (dictionary instanceof ConcurrentBSTDictionary) {
+            return ((ConcurrentBSTDictionary) dictionary).getRecordsStartingWith(prefix);
+        } else if (dictionary instanceof PersistentBSTDictionary) {
+            return ((PersistentBSTDictionary) dictionary).getRecordsStartingWith(prefix);
+        }
+        return ((ArrayBSTDictionary) dictionary).getRecordsStartingWith(prefix);
+    }
+
+    // One call of a timed operation; the argument counts the calls
+    private interface Operation {
+        int run(int i);
+    }
+
+    /*
+     * Runs an operation repeatedly for OPERATION_MILLIS to warm it up, then again for
+     * OPERATION_MILLIS while counting the calls, reading the clock every 64 calls.
+     * @return The average time of one call in nanoseconds.
+     */
+    private static long time(Operation operation) {
+        int result = 0;
+        long elapsed = 0;
+        long calls = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            long deadline = start + OPERATION_MILLIS * 1_000_000L;
+            calls = 0;
+            long now;
+            do {
+                for (int i = 0; i < 64; i++) {
+                    result += operation.run((int) calls++);
+                }
+                now = System.nanoTime();
+            } while (now < deadline);
+            elapsed = now - start;
+        }
+        sink = result;
+        return elapsed / calls;
+    }
+
+    /*
+     * Times put and remove by inserting all the spare records and removing them again,
+     * over and over, for a warm-up window and then a measurement window.
+     * @return The average time of one put and of one remove in nanoseconds.
+     */
+    private static long[] timePutRemove(BSTDictionaryADT dictionary, List<Record> spare)
+            throws DictionaryException {
+        long putNanos = 0, removeNanos = 0, rounds = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            putNanos = removeNanos = rounds = 0;
+            long deadline = System.nanoTime() + OPERATION_MILLIS * 1_000_000L;
+            while (System.nanoTime() < deadline || rounds == 0) {
+                long start = System.nanoTime();
+                for (Record record : spare) {
+                    dictionary.put(record);
+                }
+                long middle = System.nanoTime();
+                for (Record record : spare) {
+                    dictionary.remove(record.getKey());
+                }
+                long end = System.nanoTime();
+                putNanos += middle - start;
+                removeNanos += end - middle;
+                rounds++;
+            }
+        }
+        long calls = Math.max(1, rounds * spare.size());
+        return new long[] {putNanos / calls, removeNanos / calls};
+    }
+
+    /*
+     * Times prefix listings and counts for every two-letter prefix of the labels, with and
+     * without the radix trie prefix index, and reports the memory the index adds.
+     * @param records The records to load.
+     */
+    static void prefixIndex(List<Record> records) throws DictionaryException {
+        BSTDictionary plain = new BSTDictionary(true);
+        BSTDictionary indexed = new BSTDictionary(true, true);
+        plain.bulkLoad(records);
+        indexed.bulkLoad(records);
+        List<String> prefixes = new ArrayList<>();
+        for (Record record : records) {
+            String label = record.getKey().getLabel();
+            String prefix = label.substring(0, Math.min(2, label.length()));
+            if (prefixes.isEmpty() || !prefixes.get(prefixes.size() - 1).equals(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+        System.out.println();
+        System.out.println("Prefix queries over " + prefixes.size() + " two-letter prefixes (ns per query)");
+        System.out.printf("%-22s %12s %12s%n", "", "list", "count");
+        System.out.printf("%-22s %12d %12d%n", "BST scan", timeListings(plain, prefixes), timeCounts(plain, prefixes));
+        System.out.printf("%-22s %12d %12d%n", "Radix trie index", timeListings(indexed, prefixes),
+                timeCounts(indexed, prefixes));
+        System.out.println("Radix trie index adds " + indexed.prefixIndexFootprint() + " bytes (estimated)");
+    }
+
+    // Returns the average time of listing the records of each prefix, after a warm-up pass
+    private static long timeListings(BSTDictionary dictionary, List<String> prefixes) {
+        long start = 0;
+        long found = 0;
+        for (int pass = 0; pass < 5; pass++) {
+            start = System.nanoTime();
+            for (String prefix : prefixes) {
+                found += dictionary.getRecordsStartingWith(prefix).size();
+            }
+        }
+        return found == 0 ? 0 : (System.nanoTime() - start) / prefixes.size();
+    }
+
+    // Returns the average time of counting the records of each prefix, after a warm-up pass
+    private static long timeCounts(BSTDictionary dictionary, List<String> prefixes) {
+        long start = 0;
+        long found = 0;
+        for (int pass = 0; pass < 5; pass++) {
+            start = System.nanoTime();
+            for (String prefix : prefixes) {
+                found += dictionary.countPrefix(prefix);
+            }
+        }
+        return found == 0 ? 0 : (System.nanoTime() - start) / prefixes.size();
+    }
+
+    /*
+     * Compares the memory held by ArrayBSTDictionary with an estimate of the BSTNode layout
+     * of BSTDictionary for the same records. The estimate assumes a 64-bit JVM with
+     * compressed references (12-byte object headers, 4-byte references, 8-byte alignment)
+     * and compact Latin-1 strings: per record one BSTNode, one Record, one Key and two
+     * Strings with their byte arrays.
+     * @param records The records to store.
+     */
+    static void memoryFootprint(List<Record> records) throws DictionaryException {
+        ArrayBSTDictionary arrays = new ArrayBSTDictionary(records.size());
+        long nodeLayout = 0;
+        for (Record record : records) {
+            arrays.put(record);
+            nodeLayout += align(12 + 4 * 4 + 2 * 4)          // BSTNode: record, three links, height, size
+                    + align(12 + 2 * 4)                      // Record: key, data
+                    + align(12 + 4 + 2 * 4)                  // Key: label, type, hash
+                    + stringBytes(record.getKey().getLabel())
+                    + stringBytes(record.getDataItem());
+        }
+        arrays.trimToSize();
+        System.out.println();
+        System.out.println("Memory footprint for " + records.size() + " records (bytes)");
+        System.out.printf("%-22s %12d (%d per record, estimated)%n", "BSTNode layout", nodeLayout,
+                nodeLayout / Math.max(1, records.size()));
+        System.out.printf("%-22s %12d (%d per record)%n", "ArrayBSTDictionary", arrays.memoryFootprint(),
+                arrays.memoryFootprint() / Math.max(1, records.size()));
+    }
+
+    // Returns the estimated size of a Latin-1 String and its byte array
+    private static long stringBytes(String s) {
+        return align(12 + 4 + 4 + 4) + align(16 + s.length());
+    }
+
+    // Rounds an object size up to the 8-byte allocation granularity
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /*
+     * Measures the throughput of a 90% get / 10% put-or-remove mix at increasing thread
+     * counts, for a BSTDictionary behind one global lock and for ConcurrentBSTDictionary.
+     * @param records The records to run the mix over.
+     */
+    static void concurrentScaling(List<Record> records) throws Exception {
+        System.out.println();
+        System.out.println("Concurrent scaling, 90% get / 10% put-remove (ops/s)");
+        System.out.printf("%8s %15s %15s%n", "threads", "locked", "concurrent");
+        int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long locked = mixedThroughput(new LockedDictionary(new BSTDictionary(true)), records, threads);
+            long concurrent = mixedThroughput(new ConcurrentBSTDictionary(), records, threads);
+            System.out.printf("%8d %15d %15d%n", threads, locked, concurrent);
+        }
+    }
+
+    /*
+     * Fills the dictionary with nine tenths of the records, then lets the threads run the
+     * mixed workload, toggling the remaining tenth in and out with puts and removes.
+     * @return The number of operations per second over the measurement window.
+     */
+    private static long mixedThroughput(BSTDictionaryADT dictionary, List<Record> records, int threads)
+            throws Exception {
+        List<Record> spare = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (i % 10 == 0) {
+                spare.add(records.get(i));
+            } else {
+                dictionary.put(records.get(i));
+            }
+        }
+
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (running.get()) {
+                    if (random.nextInt(10) == 0) {
+                        Record record = spare.get(random.nextInt(spare.size()));
+                        try {
+                            if (random.nextBoolean()) {
+                                dictionary.put(record);
+                            } else {
+                                dictionary.remove(record.getKey());
+                            }
+                        } catch (DictionaryException e) {
+                            // Another thread got there first; still one operation
+                        }
+                    } else {
+                        dictionary.get(records.get(random.nextInt(records.size())).getKey());
+                    }
+                    if (measuring.get()) {
+                        count++;
+                    }
+                }
+                operations.add(count);
+                done.countDown();
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(MEASURE_MILLIS);
+        measuring.set(true);
+        long start = System.nanoTime();
+        Thread.sleep(MEASURE_MILLIS);
+        running.set(false);
+        long elapsed = System.nanoTime() - start;
+        done.await();
+        return operations.sum() * 1_000_000_000L / elapsed;
+    }
+
+    // Shares a dictionary between threads by holding one lock for every call
+    private static class LockedDictionary implements BSTDictionaryADT {
+        private final BSTDictionaryADT dictionary;
+
+        LockedDictionary(BSTDictionaryADT dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        public synchronized Record get(Key k) {
+            return dictionary.get(k);
+        }
+
+        public synchronized void put(Record d) throws DictionaryException {
+            dictionary.put(d);
+        }
+
+        public synchronized void remove(Key k) throws DictionaryException {
+            dictionary.remove(k);
+        }
+
+        public synchronized Record successor(Key k) {
+            return dictionary.successor(k);
+        }
+
+        public synchronized Record predecessor(Key k) {
+            return dictionary.predecessor(k);
+        }
+
+        public synchronized Record smallest() {
+            return dictionary.smallest();
+        }
+
+        public synchronized Record largest() {
+            return dictionary.largest();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class DictionaryLoader {
+    // Target size of the record-aligned chunks handed to the worker threads
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /*
+     * Reads the records of an input file, parsing it in parallel on the common ForkJoinPool.
+     * @param inputFile The name of the file to be read.
+     * @return The records in the order they appear in the file.
+     * @throws IOException if there's an error reading the file or a label has no data line.
+     */
+    public static List<Record> readRecords(String inputFile) throws IOException {
+        return readRecords(inputFile, ForkJoinPool.commonPool());
+    }
+
+    /*
+     * Reads the records of an input file. The file is memory-mapped and split into chunks
+     * that each hold a whole number of label/data line pairs; the chunks are scanned in
+     * parallel on the given pool and concatenated in file order. Lines are found directly
+     * in the mapped bytes: only labels are decoded while loading, and each record's data
+     * is decoded from the mapping the first time it is read (see MappedRecord).
+     * The file is decoded with the platform charset, like FileReader does, which must
+     * encode '\n', '\r', ' ' and the type indicators as single ASCII bytes.
+     * @param inputFile The name of the file to be read.
+     * @param pool The pool that parses the chunks.
+     * @return The records in the order they appear in the file.
+     * @throws IOException if there's an error reading the file or a label has no data line.
+     */
+    public static List<Record> readRecords(String inputFile, ForkJoinPool pool) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Input file is too large to map: " + inputFile);
+            }
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        List<Integer> bounds = chunkBounds(bytes);
+        try {
+            return pool.invoke(new ParseTask(bytes, bounds, 0, bounds.size() - 1));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * Determines the type of a record based on its line format.
+     * Types are determined by specific prefixes or file extensions in the line.
+     * @param bytes The buffer holding the line from the input file.
+     * @param start The offset of the first byte of the line.
+     * @param end The offset just past the last byte of the line.
+     * @return int representing the type of the record.
+     */
+    static int determineType(ByteBuffer bytes, int start, int end) {
+        byte first = start < end ? bytes.get(start) : 0;
+        if (first == '-') {
+            return 3; // Sound file
+        } else if (first == '+') {
+            return 4; // Music file
+        } else if (first == '*') {
+            return 5; // Voice file
+        } else if (first == '/') {
+            return 2; // Translation
+        } else if (endsWith(bytes, start, end, ".gif")) {
+            return 7; // Animated image file
+        } else if (endsWith(bytes, start, end, ".jpg")) {
+            return 6; // Image file
+        } else if (endsWith(bytes, start, end, ".html")) {
+            return 8; // Webpage URL
+        }
+        return 1; // Definition
+    }
+
+    /*
+     * Checks whether bytes[start..end) ends with the given ASCII suffix.
+     */
+    private static boolean endsWith(ByteBuffer bytes, int start, int end, String suffix) {
+        int from = end - suffix.length();
+        if (from < start) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (bytes.get(from + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Splits the file into chunks of roughly CHUNK_BYTES, cutting only after an even
+     * number of lines so that no record straddles two chunks.
+     * @param bytes The contents of the file.
+     * @return The chunk boundaries, starting with 0 and ending with the file length.
+     */
+    private static List<Integer> chunkBounds(ByteBuffer bytes) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int length = bytes.limit();
+        int lines = 0;
+        int pos = 0;
+        while (pos < length) {
+            pos = nextLine(bytes, lineEnd(bytes, pos, length), length);
+            lines++;
+            if (lines % 2 == 0 && pos - bounds.get(bounds.size() - 1) >= CHUNK_BYTES && pos < length) {
+                bounds.add(pos);
+            }
+        }
+        bounds.add(length);
+        return bounds;
+    }
+
+    /*
+     * Returns the offset of the terminator of the line starting at pos, or end if the
+     * line is not terminated. Lines end with "\n", "\r" or "\r\n", matching BufferedReader.readLine.
+     */
+    private static int lineEnd(ByteBuffer bytes, int pos, int end) {
+        while (pos < end) {
+            byte b = bytes.get(pos);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /*
+     * Returns the offset of the line following a line terminator found at lineEnd.
+     */
+    private static int nextLine(ByteBuffer bytes, int lineEnd, int end) {
+        if (lineEnd + 1 < end && bytes.get(lineEnd) == '\r' && bytes.get(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return Math.min(lineEnd + 1, end);
+    }
+
+    /*
+     * Parses the records of the chunks first..last, splitting the range in half
+     * until a single chunk is left.
+     */
+    private static class ParseTask extends RecursiveTask<List<Record>> {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer bytes;
+        private final List<Integer> bounds;
+        private final int first, last;
+
+        ParseTask(ByteBuffer bytes, List<Integer> bounds, int first, int last) {
+            this.bytes = bytes;
+            this.bounds = bounds;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected List<Record> compute() {
+            if (last - first <= 1) {
+                return parseChunk(bounds.get(first), bounds.get(last));
+            }
+            int mid = (first + last) >>> 1;
+            ParseTask left = new ParseTask(bytes, bounds, first, mid);
+            left.fork();
+            List<Record> right = new ParseTask(bytes, bounds, mid, last).compute();
+            List<Record> records = left.join();
+            records.addAll(right);
+            return records;
+        }
+
+        // Scans the label/data line pairs in bytes[start..end), decoding only the labels.
+        // The data of a record is what the loader has always kept: the data line without
+        // its first character, trimmed.
+        private List<Record> parseChunk(int start, int end) {
+            Charset charset = Charset.defaultCharset();
+            boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+            byte[] scratch = new byte[256];
+            List<Record> records = new ArrayList<>();
+            int pos = start;
+            while (pos < end) {
+                int labelEnd = lineEnd(bytes, pos, end);
+                if (labelEnd - pos > scratch.length) {
+                    scratch = new byte[labelEnd - pos];
+                }
+                bytes.get(pos, scratch, 0, labelEnd - pos);
+                String label = new String(scratch, 0, labelEnd - pos, charset);
+                pos = nextLine(bytes, labelEnd, end);
+                if (pos >= end) {
+                    throw new UncheckedIOException(new IOException("No data line for label " + label));
+                }
+
+                int lineEnd = lineEnd(bytes, pos, end);
+                int type = determineType(bytes, pos, lineEnd);
+                int dataStart = Math.min(pos + 1, lineEnd);
+                while (utf8 && dataStart < lineEnd && (bytes.get(dataStart) & 0xC0) == 0x80) {
+                    dataStart++; // rest of a multi-byte first character
+                }
+                int dataEnd = lineEnd;
+                while (dataStart < dataEnd && (bytes.get(dataStart) & 0xFF) <= ' ') {
+                    dataStart++;
+                }
+                while (dataEnd > dataStart && (bytes.get(dataEnd - 1) & 0xFF) <= ' ') {
+                    dataEnd--;
+                }
+                records.add(new MappedRecord(new Key(label, type), bytes, dataStart, dataEnd - dataStart, charset));
+                pos = nextLine(bytes, lineEnd, end);
+            }
+            return records;
+        }
+    }
+}
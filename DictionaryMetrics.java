@@ -0,0 +1,238 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class DictionaryMetrics implements DictionaryMetricsMBean {
+    // Timed operations, indexing the arrays below
+    static final int GET = 0, PUT = 1, REMOVE = 2, SUCCESSOR = 3, PREDECESSOR = 4, SMALLEST = 5,
+            LARGEST = 6, PREFIX = 7;
+    private static final String[] OPERATIONS = {"get", "put", "remove", "successor", "predecessor",
+            "smallest", "largest", "prefix"};
+
+    // Latencies are counted in power-of-two buckets: bucket b holds latencies below 2^b ns
+    private static final int BUCKETS = 64;
+
+    private final BinarySearchTree tree;
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] nanos = new LongAdder[OPERATIONS.length];
+    private final AtomicLongArray histogram = new AtomicLongArray(OPERATIONS.length * BUCKETS);
+    private final LongAdder[] comparisons = new LongAdder[OPERATIONS.length];
+    private ScheduledExecutorService dumper;
+
+    // Walks of the tree without its monitor tried before getDepthCounts takes the monitor
+    private static final int WALK_ATTEMPTS = 3;
+
+    // The last depth counts and the version of the tree they were counted at
+    private volatile DepthCounts depthCounts;
+
+    // Constructor: Initializes empty metrics for a dictionary backed by tree
+    DictionaryMetrics(BinarySearchTree tree) {
+        this.tree = tree;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            calls[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+            comparisons[i] = new LongAdder();
+        }
+    }
+
+    // Records a call of operation that started at start (from System.nanoTime) and compared
+    // keys the given number of times
+    void record(int operation, long start, long compared) {
+        record(operation, start, compared, 1);
+    }
+
+    // Records count calls of operation made together, for example the lookups of a batch,
+    // that started at start and compared keys the given number of times in all. Each call
+    // goes into the histogram with an equal share of the time.
+    void record(int operation, long start, long compared, int count) {
+        long elapsed = Math.max(0, System.nanoTime() - start);
+        calls[operation].add(count);
+        nanos[operation].add(elapsed);
+        comparisons[operation].add(compared);
+        histogram.addAndGet(operation * BUCKETS + BUCKETS - Long.numberOfLeadingZeros(elapsed / count), count);
+    }
+
+    /*
+     * Registers the metrics with the platform MBean server under
+     * "BSTDictionary:type=DictionaryMetrics,name=<name>".
+     * @param name The name telling this dictionary apart from others.
+     * @throws JMException if the name is taken or invalid.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("BSTDictionary:type=DictionaryMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    /*
+     * Prints dump() to out every periodMillis on a daemon thread, until stopDump is called.
+     * @param out Where to print the metrics.
+     * @param periodMillis The time between two dumps.
+     */
+    public synchronized void startDump(PrintStream out, long periodMillis) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dictionary-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> out.println(dump()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops the periodic dump, if one is running
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+    }
+
+    public String[] getOperations() {
+        return OPERATIONS.clone();
+    }
+
+    public long[] getCallCounts() {
+        long[] result = new long[OPERATIONS.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = calls[i].sum();
+        }
+        return result;
+    }
+
+    public long[] getMeanNanos() {
+        long[] result = new long[OPERATIONS.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = nanos[i].sum() / Math.max(1, calls[i].sum());
+        }
+        return result;
+    }
+
+    public long[] getP99Nanos() {
+        long[] result = new long[OPERATIONS.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = percentile(i, 0.99);
+        }
+        return result;
+    }
+
+    public double[] getMeanComparisons() {
+        double[] result = new double[OPERATIONS.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (double) comparisons[i].sum() / Math.max(1, calls[i].sum());
+        }
+        return result;
+    }
+
+    public double getComparisonsPerGet() {
+        return (double) comparisons[GET].sum() / Math.max(1, calls[GET].sum());
+    }
+
+    // Reads the size of the tree holding its monitor, which the thread changing the tree
+    // holds during every change once the metrics are enabled (see setShared)
+    public int getSize() {
+        synchronized (tree) {
+            return tree.size();
+        }
+    }
+
+    // The nodes keep their heights, so this holds the monitor only to read the root's
+    public int getHeight() {
+        synchronized (tree) {
+            return tree.height();
+        }
+    }
+
+    // Counting the nodes at each depth walks the whole tree, so the counts are kept until
+    // the tree's version changes, and the walk runs without the tree's monitor when no
+    // change overlaps it (see tryDepthCounts). Only a tree that keeps changing through
+    // several walks in a row is walked holding the monitor.
+    public int[] getDepthCounts() {
+        DepthCounts cached = depthCounts;
+        long version = tree.version();
+        if (cached != null && cached.version == version) {
+            return cached.counts.clone();
+        }
+        int[] counts = null;
+        for (int attempt = 0; attempt < WALK_ATTEMPTS && counts == null; attempt++) {
+            version = tree.version();
+            counts = tree.tryDepthCounts(version);
+            if (counts == null) {
+                Thread.yield();
+            }
+        }
+        if (counts == null) {
+            synchronized (tree) {
+                version = tree.version();
+                counts = tree.depthCounts();
+            }
+        }
+        depthCounts = new DepthCounts(version, counts);
+        return counts.clone();
+    }
+
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        int[] depths = getDepthCounts();
+        long size = 0, weighted = 0;
+        for (int depth = 0; depth < depths.length; depth++) {
+            size += depths[depth];
+            weighted += (long) depth * depths[depth];
+        }
+        builder.append(String.format("Dictionary metrics: size %d, height %d, average depth %.2f%n",
+                size, depths.length, (double) weighted / Math.max(1, size)));
+        builder.append(String.format("%-12s %12s %12s %12s %12s%n", "operation", "calls", "mean ns", "p99 ns", "comparisons"));
+        long[] counts = getCallCounts();
+        long[] means = getMeanNanos();
+        long[] p99 = getP99Nanos();
+        double[] compared = getMeanComparisons();
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            builder.append(String.format("%-12s %12d %12d %12d %12.2f%n", OPERATIONS[i], counts[i], means[i], p99[i], compared[i]));
+        }
+        return builder.toString();
+    }
+
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            calls[i].reset();
+            nanos[i].reset();
+            comparisons[i].reset();
+        }
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    // Returns the upper bound of the histogram bucket holding the given fraction of the
+    // calls of operation, or 0 if it has none
+    private long percentile(int operation, double fraction) {
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            total += histogram.get(operation * BUCKETS + b);
+        }
+        long wanted = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS && total > 0; b++) {
+            seen += histogram.get(operation * BUCKETS + b);
+            if (seen >= wanted) {
+                return b >= 63 ? Long.MAX_VALUE : 1L << b;
+            }
+        }
+        return 0;
+    }
+
+    // Depth counts of the tree at one version, shared between the threads reading metrics
+    private static class DepthCounts {
+        private final long version;
+        private final int[] counts;
+
+        DepthCounts(long version, int[] counts) {
+            this.version = version;
+            this.counts = counts;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+public interface DictionaryMetricsMBean {
+    /* Management interface of DictionaryMetrics, as seen through JMX (e.g. in jconsole) */
+
+    /* Returns the names of the timed operations, in the order used by the other arrays. */
+    public String[] getOperations();
+
+    /* Returns the number of calls of each operation. */
+    public long[] getCallCounts();
+
+    /* Returns the mean latency of each operation in nanoseconds. */
+    public long[] getMeanNanos();
+
+    /* Returns an upper bound of the 99th percentile latency of each operation in nanoseconds. */
+    public long[] getP99Nanos();
+
+    /* Returns the mean number of key comparisons of each operation. */
+    public double[] getMeanComparisons();
+
+    /* Returns the average number of key comparisons per get. */
+    public double getComparisonsPerGet();
+
+    /* Returns the number of records in the dictionary. */
+    public int getSize();
+
+    /* Returns the height of the tree, counting nodes on the longest path from the root. */
+    public int getHeight();
+
+    /* Returns the number of nodes at each depth of the tree, the root being at depth 0. */
+    public int[] getDepthCounts();
+
+    /* Returns a readable summary of all the metrics. */
+    public String dump();
+
+    /* Clears the operation counts and latencies. */
+    public void reset();
+}
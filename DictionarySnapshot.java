@@ -0,0 +1,149 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DictionarySnapshot {
+    // First bytes of every snapshot file: "BSTS" followed by the format version
+    private static final int MAGIC = 0x42535453;
+    private static final int VERSION = 1;
+
+    // Size of the header: magic, version and record count
+    private static final int HEADER_BYTES = 12;
+
+    // Smallest entry: type, label length and data length, with an empty label and data
+    private static final int MIN_ENTRY_BYTES = 12;
+
+    /*
+     * Writes the records of a dictionary to a binary snapshot file, in key order.
+     * The file starts with the magic number, the format version and the record count,
+     * followed by one entry per record: its type, the UTF-8 lengths of its label and data,
+     * then the label and data bytes. The snapshot is written to a temporary file, forced
+     * to disk and only then moved over the target, and the move itself is forced by
+     * syncing the directory. A crash or power loss therefore leaves either the old or the
+     * new snapshot, never a half-written one, and a mapped older snapshot stays readable.
+     * @param dictionary The dictionary to save.
+     * @param snapshotFile The name of the file to write.
+     * @throws IOException if there's an error writing the file.
+     */
+    public static void save(BSTDictionary dictionary, String snapshotFile) throws IOException {
+        Path target = Paths.get(snapshotFile).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream file = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dictionary.size());
+            for (Record record : dictionary) {
+                byte[] label = record.getKey().getLabel().getBytes(StandardCharsets.UTF_8);
+                byte[] data = record.getDataItem().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(record.getKey().getType());
+                out.writeInt(label.length);
+                out.writeInt(data.length);
+                out.write(label);
+                out.write(data);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getParent());
+    }
+
+    // Forces the entries of a directory, such as a file just renamed into it, to disk.
+    // Some platforms cannot open a directory for this; the rename is then as durable as
+    // the file system makes it.
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here
+        }
+    }
+
+    /*
+     * Reads the records of a snapshot file by memory-mapping it. Only the labels are
+     * decoded; the data of each record stays in the mapping until it is first read
+     * (see MappedRecord). The records come back in key order, so bulkLoad builds the
+     * tree from them in linear time without sorting.
+     * @param snapshotFile The name of the file to read.
+     * @return The records in key order.
+     * @throws IOException if there's an error reading the file or it is not a valid snapshot.
+     */
+    public static List<Record> load(String snapshotFile) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotFile), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map: " + snapshotFile);
+            }
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (bytes.limit() < HEADER_BYTES || bytes.getInt(0) != MAGIC) {
+            throw new IOException("Not a dictionary snapshot: " + snapshotFile);
+        }
+        if (bytes.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + bytes.getInt(4) + ": " + snapshotFile);
+        }
+        int count = bytes.getInt(8);
+        if (count < 0 || count > (bytes.limit() - HEADER_BYTES) / MIN_ENTRY_BYTES) {
+            throw new IOException("Corrupt snapshot record count " + count + ": " + snapshotFile);
+        }
+        List<Record> records = new ArrayList<>(count);
+        byte[] scratch = new byte[256];
+        int pos = HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            if (pos + MIN_ENTRY_BYTES > bytes.limit()) {
+                throw new IOException("Truncated snapshot: " + snapshotFile);
+            }
+            int type = bytes.getInt(pos);
+            int labelLength = bytes.getInt(pos + 4);
+            int dataLength = bytes.getInt(pos + 8);
+            pos += 12;
+            if (labelLength < 0 || dataLength < 0 || bytes.limit() - pos < (long) labelLength + dataLength) {
+                throw new IOException("Truncated snapshot: " + snapshotFile);
+            }
+            if (labelLength > scratch.length) {
+                scratch = new byte[labelLength];
+            }
+            bytes.get(pos, scratch, 0, labelLength);
+            Key key = new Key(new String(scratch, 0, labelLength, StandardCharsets.UTF_8), type);
+            pos += labelLength;
+            records.add(new MappedRecord(key, bytes, pos, dataLength, StandardCharsets.UTF_8));
+            pos += dataLength;
+        }
+        return records;
+    }
+
+    /*
+     * Checks whether a file starts with a snapshot header: the magic number followed by a
+     * version below 65536. The "BSTS" of the magic number can also start a text file, but
+     * text has no NUL bytes, which the high bytes of such a version are.
+     * @param inputFile The name of the file to check.
+     * @return true if the file looks like a snapshot, false if it is a text file.
+     * @throws IOException if there's an error reading the file.
+     */
+    public static boolean isSnapshot(String inputFile) throws IOException {
+        byte[] head = new byte[8];
+        try (InputStream in = Files.newInputStream(Paths.get(inputFile))) {
+            if (in.readNBytes(head, 0, 8) < 8) {
+                return false;
+            }
+        }
+        ByteBuffer header = ByteBuffer.wrap(head);
+        return header.getInt(0) == MAGIC && header.getInt(4) >>> 16 == 0;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public final class FrozenIndex {
+    // Keys in Eytzinger (breadth-first) order, starting at index 1: the children of the key
+    // at index i are at 2i and 2i + 1, so the first levels of every search share a few
+    // cache lines and the next probe is an index computed from the comparison, not a pointer
+    private final Key[] keys;
+
+    // First four characters of each label in the same order, packed so that comparing two
+    // of them unsigned agrees with the label order whenever they differ
+    private final long[] prefixes;
+
+    // Position in key order of the key at each Eytzinger index
+    private final int[] rank;
+
+    // The records in key order, for successor, predecessor and prefix scans
+    private final Record[] sorted;
+
+    // Constructor: Lays out records, which must be in strictly increasing key order
+    FrozenIndex(List<Record> records) {
+        int n = records.size();
+        this.sorted = records.toArray(new Record[0]);
+        this.keys = new Key[n + 1];
+        this.prefixes = new long[n + 1];
+        this.rank = new int[n + 1];
+        fill(1, 0);
+    }
+
+    // Helper method placing the records in Eytzinger order: an in-order walk of the
+    // implicit tree visits its indices in key order. Returns the next record to place.
+    private int fill(int i, int next) {
+        if (i < keys.length) {
+            next = fill(2 * i, next);
+            keys[i] = sorted[next].getKey();
+            prefixes[i] = pack(keys[i].getLabel());
+            rank[i] = next++;
+            next = fill(2 * i + 1, next);
+        }
+        return next;
+    }
+
+    // Returns the number of records in the index
+    public int size() {
+        return sorted.length;
+    }
+
+    // Returns the record with key k, or null if it is not in the index
+    public Record get(Key k) {
+        int i = lowerBound(k, false);
+        return i < sorted.length && sorted[i].getKey().equals(k) ? sorted[i] : null;
+    }
+
+    // Returns the record with the smallest key larger than k, or null if there is none.
+    // The key does not need to be in the index.
+    public Record successor(Key k) {
+        int i = lowerBound(k, true);
+        return i < sorted.length ? sorted[i] : null;
+    }
+
+    // Returns the record with the largest key smaller than k, or null if there is none.
+    // The key does not need to be in the index.
+    public Record predecessor(Key k) {
+        int i = lowerBound(k, false);
+        return i > 0 ? sorted[i - 1] : null;
+    }
+
+    // Returns the record with the smallest key, or null if the index is empty
+    public Record smallest() {
+        return sorted.length > 0 ? sorted[0] : null;
+    }
+
+    // Returns the record with the largest key, or null if the index is empty
+    public Record largest() {
+        return sorted.length > 0 ? sorted[sorted.length - 1] : null;
+    }
+
+    // Returns a list of records starting with a given prefix
+    public List<Record> getRecordsStartingWith(String prefix) {
+        List<Record> matchedRecords = new ArrayList<>();
+        String lowerPrefix = prefix.toLowerCase();
+        for (int i = lowerBound(new Key(lowerPrefix, Integer.MIN_VALUE), false); i < sorted.length; i++) {
+            if (!sorted[i].getKey().getLabel().startsWith(lowerPrefix)) {
+                break;
+            }
+            matchedRecords.add(sorted[i]);
+        }
+        return matchedRecords;
+    }
+
+    // Returns the position in key order of the first key at least k (strictly larger than
+    // k when strict is true), or size() if there is none. The loop descends the whole
+    // height of the implicit tree without exiting early; the bits shifted in on the way
+    // down record the turns, and the trailing right turns are stripped to find the answer.
+    // Only keys sharing the packed prefix of k are compared in full.
+    private int lowerBound(Key k, boolean strict) {
+        int limit = strict ? 0 : -1;
+        long packed = pack(k.getLabel());
+        int i = 1;
+        while (i < keys.length) {
+            int compareResult = Long.compareUnsigned(prefixes[i], packed);
+            if (compareResult == 0) {
+                compareResult = keys[i].compareTo(k);
+            }
+            i = 2 * i + (compareResult <= limit ? 1 : 0);
+        }
+        i >>>= Integer.numberOfTrailingZeros(~i) + 1;
+        return i == 0 ? sorted.length : rank[i];
+    }
+
+    // Packs the first four characters of a label into a long, padding shorter labels with zeros
+    private static long pack(String label) {
+        long packed = 0;
+        for (int i = 0; i < 4; i++) {
+            packed = packed << 16 | (i < label.length() ? label.charAt(i) : 0);
+        }
+        return packed;
+    }
+}
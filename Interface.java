@@ -2,22 +2,66 @@ import java.io.*;
 import java.util.*;
 
 public class Interface {
-    private static BSTDictionary dictionary = new BSTDictionary();
+    private static BSTDictionary dictionary = new BSTDictionary(true, true);
+
+    // Log of the add and delete commands, or null when the changes are not logged
+    private static WriteAheadLog log;
+
+    // Where command results are printed: flushed after every line when interactive, and
+    // through a large buffer in batch mode
+    private static PrintWriter out = new PrintWriter(System.out, true);
 
      /*
      * Main method - serves as the entry point for the application.
      * It checks for the required input file argument, processes the input file,
      * and then enters a loop to read and process user commands until the "exit" command is issued.
-     * @param args Command line arguments, expecting a single argument for the input file name.
+     * With "-wal logFile", the changes made by add and delete are appended to logFile and
+     * replayed on top of the input file at the next start; "-sync always|group|none" picks
+     * when they are forced to disk (group by default). "-metrics seconds" records operation
+     * metrics, publishes them over JMX and prints them to standard error that often.
+     * "-cache entries" keeps the most recently looked up records in a cache of that size
+     * and prints its hit rate to standard error on exit. "-bloom rate" puts a Bloom filter
+     * with that false positive rate, in at most 16 MB, in front of the lookups.
+     * "-batch commandFile" reads the commands from commandFile ("-" for standard input)
+     * without prompting, buffers the results and reports the throughput on standard error.
+     * @param args Command line arguments: the options, then the input file name.
      */
      public static void main(String[] args) {
+        String inputFile = null;
+        String logFile = null;
+        WriteAheadLog.SyncPolicy policy = WriteAheadLog.SyncPolicy.GROUP;
+        long metricsSeconds = 0;
+        int cacheEntries = 0;
+        double bloomRate = 0;
+        String commandFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-wal") && i + 1 < args.length) {
+                logFile = args[++i];
+            } else if (args[i].equals("-sync") && i + 1 < args.length) {
+                try {
+                    policy = WriteAheadLog.SyncPolicy.valueOf(args[++i].toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    out.println("Unknown sync policy " + args[i] + ", expected always, group or none");
+                    return;
+                }
+            } else if (args[i].equals("-metrics") && i + 1 < args.length) {
+                metricsSeconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-cache") && i + 1 < args.length) {
+                cacheEntries = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-bloom") && i + 1 < args.length) {
+                bloomRate = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-batch") && i + 1 < args.length) {
+                commandFile = args[++i];
+            } else {
+                inputFile = args[i];
+            }
+        }
     	// Check if an input file is provided
-        if (args.length < 1) {
-            System.out.println("Usage: java Interface <inputFile>");
+        if (inputFile == null) {
+            out.println("Usage: java Interface [-wal logFile] [-sync always|group|none] [-metrics seconds] [-cache entries] [-bloom rate] [-batch commandFile|-] <inputFile>");
             return;
         }
 
-        String inputFile = args[0];
         try {
             // Read and process the input file
             readInputFile(inputFile);
@@ -27,6 +71,43 @@ public class Interface {
             return;
         }
 
+        if (logFile != null) {
+            try {
+                int replayed = WriteAheadLog.replay(logFile, dictionary);
+                if (replayed > 0) {
+                    out.println("Replayed " + replayed + " logged changes from " + logFile);
+                }
+                log = new WriteAheadLog(logFile, policy, 10);
+            } catch (IOException e) {
+                System.err.println("Error opening log file: " + e.getMessage());
+                return;
+            }
+        }
+
+        if (metricsSeconds > 0) {
+            DictionaryMetrics metrics = dictionary.enableMetrics();
+            try {
+                metrics.register("Interface");
+            } catch (javax.management.JMException e) {
+                System.err.println("Metrics are not published over JMX: " + e.getMessage());
+            }
+            metrics.startDump(System.err, metricsSeconds * 1000);
+        }
+
+        if (cacheEntries > 0) {
+            dictionary.enableCache(cacheEntries);
+        }
+        if (bloomRate > 0) {
+            dictionary.enableBloomFilter(bloomRate, 16 << 20);
+        }
+
+        if (commandFile != null) {
+            runBatch(commandFile);
+            closeLog();
+            reportCache();
+            return;
+        }
+
         // Set up for reading user commands
         StringReader keyboard = new StringReader();
         String command;
@@ -35,70 +116,80 @@ public class Interface {
             command = keyboard.read("Enter next command: ");
             // Check for exit command
             if (command.equals("exit")) {
-                System.out.println("Exiting program.");
+                out.println("Exiting program.");
                 break;
             }
             // Process the command
             processCommand(command);
         }
+        closeLog();
+        reportCache();
      }
      
+     /*
+     * Processes every command of a file or of standard input, one per line, without
+     * prompts. Results go through a 1 MB buffer that is flushed once at the end instead of
+     * after every line, and the number of commands and the rate at which they were
+     * processed are printed to standard error. Blank lines are skipped; "exit" stops early.
+     * @param commandFile The name of the command file, or "-" for standard input.
+     */
+     private static void runBatch(String commandFile) {
+         out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 20), false);
+         long start = System.nanoTime();
+         long commands = 0;
+         try (BufferedReader in = commandFile.equals("-")
+                 ? new BufferedReader(new InputStreamReader(System.in), 1 << 16)
+                 : new BufferedReader(new FileReader(commandFile), 1 << 16)) {
+             String command;
+             while ((command = in.readLine()) != null) {
+                 if (command.isBlank()) {
+                     continue;
+                 }
+                 if (command.equals("exit")) {
+                     break;
+                 }
+                 processCommand(command);
+                 commands++;
+             }
+         } catch (IOException e) {
+             System.err.println("Error reading commands: " + e.getMessage());
+         }
+         out.flush();
+         double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+         System.err.printf("Processed %d commands in %.3f s (%.0f commands/s)%n", commands, seconds, commands / seconds);
+     }
+
      /* Reads the input file and adds the records to the dictionary.
      * Each line of the file is expected to have a label and data,
      * with the type determined based on the data format.
+     * The file is parsed in parallel by DictionaryLoader and the records
+     * are bulk loaded into a balanced tree in one step.
+     * A binary snapshot written by the "save" command is recognized by its
+     * magic number and mapped instead of parsed.
      * @param inputFile The name of the file to be read.
      * @throws IOException if there's an error reading the file.
      * @throws DictionaryException if there's an error processing the dictionary.
      */
      private static void readInputFile(String inputFile) throws IOException, DictionaryException {
-         BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-         String label;
-         while ((label = reader.readLine()) != null) {
-             String line = reader.readLine();
-             int type = determineType(line);
-             String data = line.substring(1).trim();
-             Record record = new Record(new Key(label.toLowerCase(), type), data);
-             dictionary.put(record);
-         }
-         reader.close();
-     }
-     
-     /* Determines the type of a record based on its line format.
-     * Types are determined by specific prefixes or file extensions in the line.
-     * @param line The line from the input file to determine the type of.
-     * @return int representing the type of the record.
-     */
-     private static int determineType(String line) {
-         if (line.startsWith("-")) {
-             return 3; // Sound file
-         } else if (line.startsWith("+")) {
-             return 4; // Music file
-         } else if (line.startsWith("*")) {
-             return 5; // Voice file
-         } else if (line.startsWith("/")) {
-             return 2; // Translation
-         } else if (line.endsWith(".gif")) {
-             return 7; // Animated image file
-         } else if (line.endsWith(".jpg")) {
-             return 6; // Image file
-         } else if (line.endsWith(".html")) {
-             return 8; // Webpage URL
+         if (DictionarySnapshot.isSnapshot(inputFile)) {
+             dictionary.bulkLoad(DictionarySnapshot.load(inputFile));
+         } else {
+             dictionary.bulkLoad(DictionaryLoader.readRecords(inputFile));
          }
-         return 1; // Definition
      }
      
      
      /* Processes a user command by splitting it into parts and handling
      * it based on the command type. Supports various commands like "define", "translate",
      * "sound", "play", "say", "show", "animate", "browse", "add", "delete", "list",
-     * "first", "last", and "exit".
+     * "save", "first", "last", and "exit".
      *
      * @param command The command string entered by the user.
      */
      private static void processCommand(String command) {
          String[] parts = command.split(" ");
          if (parts.length < 2) {
-             System.out.println("Invalid command");
+             out.println("Invalid command");
              return;
          }
 
@@ -136,7 +227,7 @@ public class Interface {
                      break;
                  case "delete":
                      if (parts.length < 3) {
-                         System.out.println("Invalid command format for delete");
+                         out.println("Invalid command format for delete");
                          break;
                      }
                      w = parts[1];
@@ -145,11 +236,18 @@ public class Interface {
                      break;
                  case "list":
                      if (parts.length < 2) {
-                         System.out.println("Invalid command format for list");
+                         out.println("Invalid command format for list");
                          break;
                      }
                      String prefix = parts[1];
-                     handleList(prefix);
+                     if (parts.length >= 4) {
+                         handleListPage(prefix, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                     } else {
+                         handleList(prefix);
+                     }
+                     break;
+                 case "save":
+                     handleSave(parts[1]);
                      break;
                  case "first":
                      handleFirst();
@@ -161,7 +259,7 @@ public class Interface {
                      handleExit();
                      break;
                  default:
-                     System.out.println("Invalid command");
+                     out.println("Invalid command");
              }
          } catch (Exception e) {
              System.err.println("Error processing command: " + e.getMessage());
@@ -174,11 +272,11 @@ public class Interface {
      * @param word The word to define.
      */
      private static void handleDefine(String word) {
-         Record record = dictionary.get(new Key(word, 1));
+         Record record = dictionary.get(word, 1);
          if (record != null) {
-             System.out.println(record.getDataItem());
+             out.println(record.getDataItem());
          } else {
-             System.out.println("The word " + word + " is not in the ordered dictionary");
+             out.println("The word " + word + " is not in the ordered dictionary");
          }
      }
      
@@ -188,11 +286,11 @@ public class Interface {
      * @param word The word to translate.
      */
      private static void handleTranslate(String word) {
-         Record record = dictionary.get(new Key(word, 2));
+         Record record = dictionary.get(word, 2);
          if (record != null) {
-             System.out.println(record.getDataItem());
+             out.println(record.getDataItem());
          } else {
-             System.out.println("There is no definition for the word " + word);
+             out.println("There is no definition for the word " + word);
          }
      }
      
@@ -203,18 +301,18 @@ public class Interface {
      * @param word The word whose sound file is to be played.
      */
      private static void handleSound(String word) {
-    	    Record record = dictionary.get(new Key(word, 3)); 
+    	    Record record = dictionary.get(word, 3); 
     	    if (record != null) {
     	        SoundPlayer soundPlayer = new SoundPlayer();
     	        try {
     	            soundPlayer.play(record.getDataItem());
     	        } catch (MultimediaException e) {
-    	            System.out.println("There is no sound file for " + word);
+    	            out.println("There is no sound file for " + word);
     	        } catch (Exception e) {
-    	            System.out.println("Error playing sound file: " + e.getMessage());
+    	            out.println("Error playing sound file: " + e.getMessage());
     	        }
     	    } else {
-    	        System.out.println("There is no sound file for " + word);
+    	        out.println("There is no sound file for " + word);
     	    }
     }
     
@@ -225,18 +323,18 @@ public class Interface {
      * @param word The word whose music file is to be played.
      */
      private static void handlePlay(String word) {
-    	 Record record = dictionary.get(new Key(word, 4)); 
+    	 Record record = dictionary.get(word, 4); 
     	 if (record != null) {
     	        SoundPlayer soundPlayer = new SoundPlayer();
     	        try {
     	            soundPlayer.play(record.getDataItem());
     	        } catch (MultimediaException e) {
-    	            System.out.println("There is no music file for " + word);
+    	            out.println("There is no music file for " + word);
     	        } catch (Exception e) {
-    	            System.out.println("Error playing music file: " + e.getMessage());
+    	            out.println("Error playing music file: " + e.getMessage());
     	        }
     	    } else {
-    	        System.out.println("There is no music file for " + word);
+    	        out.println("There is no music file for " + word);
     	    }
      }
      
@@ -247,18 +345,18 @@ public class Interface {
      * @param word The word whose voice file is to be played.
      */
      private static void handleSay(String word) {
-    	 Record record = dictionary.get(new Key(word, 5)); 
+    	 Record record = dictionary.get(word, 5); 
     	 if (record != null) {
     	        SoundPlayer soundPlayer = new SoundPlayer();
     	        try {
     	            soundPlayer.play(record.getDataItem());
     	        } catch (MultimediaException e) {
-    	            System.out.println("There is no voice file for " + word);
+    	            out.println("There is no voice file for " + word);
     	        } catch (Exception e) {
-    	            System.out.println("Error playing voice file: " + e.getMessage());
+    	            out.println("Error playing voice file: " + e.getMessage());
     	        }
     	    } else {
-    	        System.out.println("There is no voice file for " + word);
+    	        out.println("There is no voice file for " + word);
     	    }
      }
      
@@ -270,13 +368,13 @@ public class Interface {
      * @throws MultimediaException If there is an issue displaying the image.
      */
      private static void handleShow(String word) throws MultimediaException {
-    	 Record record = dictionary.get(new Key(word, 6)); 
+    	 Record record = dictionary.get(word, 6); 
     	    if (record != null) {
     	    	PictureViewer pictureViewer = new PictureViewer();
     	        pictureViewer.show(record.getDataItem());
     	    }    
     	    else {
-    	        System.out.println("There is no image file for " + word);
+    	        out.println("There is no image file for " + word);
     	 }
     }
 
@@ -288,14 +386,14 @@ public class Interface {
      * @throws MultimediaException If there is an issue displaying the animated image.
      */
      private static void handleAnimate(String word) throws MultimediaException {
-    	Record record = dictionary.get(new Key(word, 7)); 
+    	Record record = dictionary.get(word, 7); 
 	 	    if (record != null) {
 	 	    	PictureViewer pictureViewer = new PictureViewer();
 	 	        pictureViewer.show(record.getDataItem());
 	 	        
 	 	        }
 	 	    else {
-	 	        System.out.println("There is no animated image file for " + word);
+	 	        out.println("There is no animated image file for " + word);
 	 	 }
      }
      
@@ -307,12 +405,12 @@ public class Interface {
      * @throws MultimediaException If there is an issue opening the webpage.
      */
      private static void handleBrowse(String word) throws MultimediaException {
-    	    Record record = dictionary.get(new Key(word, 8)); 
+    	    Record record = dictionary.get(word, 8); 
     	    if (record != null) {
     	    	ShowHTML showHTML = new ShowHTML();
     	        showHTML.show(record.getDataItem());
     	    } else {
-    	        System.out.println("There is no webpage called " + word);
+    	        out.println("There is no webpage called " + word);
     	    }
     	}
 
@@ -323,12 +421,18 @@ public class Interface {
      * @param label The label of the record to delete.
      * @param type The type of the record to delete.
      */
-     private static void handleDelete(String label, int type) {
+     private static void handleDelete(String label, int type) throws IOException {
     	    try {
-    	        dictionary.remove(new Key(label.toLowerCase(), type));
-    	        System.out.println("Record removed successfully");
+    	        Key key = new Key(label.toLowerCase(), type);
+    	        // Logged before it is applied, so a change the log could not take is not made;
+    	        // a remove the dictionary then rejects is skipped again by replay
+    	        if (log != null) {
+    	            log.logRemove(key);
+    	        }
+    	        dictionary.remove(key);
+    	        out.println("Record removed successfully");
     	    } catch (DictionaryException e) {
-    	        System.out.println("No record in the ordered dictionary has key (" + label + ", " + type + ")");
+    	        out.println("No record in the ordered dictionary has key (" + label + ", " + type + ")");
     	    }
      }
      
@@ -340,12 +444,17 @@ public class Interface {
      * @param type The type of the new record.
      * @param data The data associated with the new record.
      */
-     private static void handleAdd(String label, int type, String data) {
+     private static void handleAdd(String label, int type, String data) throws IOException {
     	    try {
-    	        dictionary.put(new Record(new Key(label.toLowerCase(), type), data));
-    	        System.out.println("A record with the given key (" + label + ", " + type + ") is already in the ordered dictionary");
+    	        Record record = new Record(new Key(label.toLowerCase(), type), data);
+    	        // Logged before it is applied, like a delete
+    	        if (log != null) {
+    	            log.logPut(record);
+    	        }
+    	        dictionary.put(record);
+    	        out.println("A record with the given key (" + label + ", " + type + ") is already in the ordered dictionary");
     	    } catch (DictionaryException e) {
-    	        System.out.println("A record with the given key (" + label + ", " + type + ") is already in the ordered dictionary");
+    	        out.println("A record with the given key (" + label + ", " + type + ") is already in the ordered dictionary");
     	    }
     	}
      
@@ -358,14 +467,33 @@ public class Interface {
          List<Record> records = dictionary.getRecordsStartingWith(prefix);
 
          if (records.isEmpty()) {
-             System.out.println("No label attributes in the ordered dictionary start with prefix " + prefix);
+             out.println("No label attributes in the ordered dictionary start with prefix " + prefix);
          } else {
              for (Record record : records) {
-                 System.out.println(record.getKey().getLabel());
+                 out.println(record.getKey().getLabel());
              }
          }
      }
      
+     /*
+     * Lists one page of the records starting with a specific prefix,
+     * followed by the total number of matching records.
+     * @param prefix The prefix to search for in the dictionary.
+     * @param offset The number of matching records to skip.
+     * @param count The maximum number of records to list.
+     */
+     private static void handleListPage(String prefix, int offset, int count) {
+         int total = dictionary.countPrefix(prefix);
+         if (total == 0) {
+             out.println("No label attributes in the ordered dictionary start with prefix " + prefix);
+             return;
+         }
+         for (Record record : dictionary.getRecordsStartingWith(prefix, offset, count)) {
+             out.println(record.getKey().getLabel());
+         }
+         out.println("(" + total + " records start with prefix " + prefix + ")");
+     }
+     
      /*
      * Displays the first record in the dictionary.
      * The first record is determined based on some ordering in the dictionary.
@@ -373,9 +501,9 @@ public class Interface {
      private static void handleFirst() {
     	    Record record = dictionary.smallest();
     	    if (record != null) {
-    	        System.out.println(record.getKey().getLabel() + "," + record.getKey().getType() + "," + record.getDataItem());
+    	        out.println(record.getKey().getLabel() + "," + record.getKey().getType() + "," + record.getDataItem());
     	    } else {
-    	        System.out.println("Dictionary is empty.");
+    	        out.println("Dictionary is empty.");
     	    }
     }
      
@@ -386,9 +514,23 @@ public class Interface {
     private static void handleLast() {
 	    Record record = dictionary.largest();
 	    if (record != null) {
-	        System.out.println(record.getKey().getLabel() + "," + record.getKey().getType() + "," + record.getDataItem());
+	        out.println(record.getKey().getLabel() + "," + record.getKey().getType() + "," + record.getDataItem());
 	    } else {
-	        System.out.println("Dictionary is empty.");
+	        out.println("Dictionary is empty.");
+	    }
+	}
+
+    /*
+    * Saves the dictionary as a binary snapshot that can be given to the program
+    * instead of the text input file for a fast start.
+    * @param snapshotFile The name of the file to write.
+    */
+    private static void handleSave(String snapshotFile) {
+	    try {
+	        DictionarySnapshot.save(dictionary, snapshotFile);
+	        out.println("Saved " + dictionary.size() + " records to " + snapshotFile);
+	    } catch (IOException e) {
+	        out.println("Could not save the dictionary: " + e.getMessage());
 	    }
 	}
 
@@ -397,9 +539,36 @@ public class Interface {
     * Terminates the execution of the application.
     */
     private static void handleExit() {
-	    System.out.println("Exiting program.");
+	    out.println("Exiting program.");
+	    out.flush();
+	    closeLog();
+	    reportCache();
 	    System.exit(0);
 	}
+
+    /*
+    * Forces the logged changes to disk and closes the log, if there is one.
+    */
+    private static void closeLog() {
+	    if (log != null) {
+	        try {
+	            log.close();
+	        } catch (IOException e) {
+	            System.err.println("Error closing log file: " + e.getMessage());
+	        }
+	        log = null;
+	    }
+	}
+
+
+    /*
+    * Prints the hit rate of the lookup cache to standard error, if there is one.
+    */
+    private static void reportCache() {
+	    if (dictionary.getCache() != null) {
+	        System.err.println(dictionary.getCache());
+	    }
+	}
      
      /*
      * Combines parts of a string array into a single string.
@@ -1,12 +1,14 @@
 
-public class Key {
+public class Key implements Comparable<Key> {
 	private String label;
     private int type;
+    private int hash;
     
     // Constructor: Initializes a Key with a label and type
     public Key(String theLabel, int theType) {
         this.label = theLabel.toLowerCase();
         this.type = theType;
+        this.hash = hashFolded(this.label, theType);
     }
     
     // Returns the label of the Key
@@ -19,15 +21,99 @@ public class Key {
         return type;
     }
     
-    // Compares this Key to another Key
+    // Compares this Key to another Key, scanning the labels only once
     public int compareTo(Key k) {
-        if (this.label.equals(k.getLabel()) && this.type == k.getType()) {
-            return 0;
-        } else if (this.label.compareTo(k.getLabel()) < 0 || (this.label.equals(k.getLabel()) && this.type < k.getType())) {
-            return -1;
-        } else {
-            return 1;
+        int result = this.label.compareTo(k.label);
+        if (result == 0) {
+            result = Integer.compare(this.type, k.type);
         }
+        return result < 0 ? -1 : (result > 0 ? 1 : 0);
+    }
+
+    // Compares the key (label, type) to k the way new Key(label, type).compareTo(k) would,
+    // folding label to lower case one character at a time instead of allocating a Key.
+    // Once it reaches a character that String.toLowerCase may fold differently (see
+    // foldsPerChar), it lower cases the whole label the way the constructor does.
+    public static int compare(CharSequence label, int type, Key k) {
+        String other = k.label;
+        int length = Math.min(label.length(), other.length());
+        for (int i = 0; i < length; i++) {
+            char raw = label.charAt(i);
+            if (!foldsPerChar(raw)) {
+                return new Key(label.toString(), type).compareTo(k);
+            }
+            char c = Character.toLowerCase(raw);
+            char o = other.charAt(i);
+            if (c != o) {
+                return c < o ? -1 : 1;
+            }
+        }
+        if (label.length() != other.length()) {
+            return label.length() < other.length() ? -1 : 1;
+        }
+        return type < k.type ? -1 : (type > k.type ? 1 : 0);
+    }
+
+    // Computes the hash code of the key (label, type), folding label to lower case,
+    // so that it equals new Key(label, type).hashCode()
+    public static int hash(CharSequence label, int type) {
+        int h = 0;
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (!foldsPerChar(c)) {
+                return hashFolded(label.toString().toLowerCase(), type);
+            }
+            h = 31 * h + Character.toLowerCase(c);
+        }
+        return 31 * h + type;
+    }
+
+    // Checks whether every character of label folds to lower case the same way on its own
+    // as in String.toLowerCase, in any locale, so that compare and hash can fold it one
+    // character at a time
+    public static boolean foldsPerChar(CharSequence label) {
+        for (int i = 0; i < label.length(); i++) {
+            if (!foldsPerChar(label.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Checks whether c folds the same way on its own as in String.toLowerCase. That holds
+    // for ASCII except 'I', which Turkish and Azeri lower case to a dotless i. Outside
+    // ASCII, a character may become several (capital I with dot above) or depend on its
+    // neighbours (final sigma).
+    private static boolean foldsPerChar(char c) {
+        return c < 0x80 && c != 'I';
+    }
+
+    // Computes the hash code of a key whose label is already in lower case
+    private static int hashFolded(String label, int type) {
+        int h = 0;
+        for (int i = 0; i < label.length(); i++) {
+            h = 31 * h + label.charAt(i);
+        }
+        return 31 * h + type;
+    }
+
+    // Checks whether the other object is a Key with the same label and type
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Key)) {
+            return false;
+        }
+        Key k = (Key) o;
+        return hash == k.hash && type == k.type && label.equals(k.label);
+    }
+
+    // Returns the hash code computed when the Key was created
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
 }
@@ -0,0 +1,158 @@
+import java.util.LinkedHashMap;
+
+public class LookupCache {
+    // Records by Key in access order, so the first entry is the least recently used
+    private final LinkedHashMap<Key, Record> entries;
+    private final int capacity;
+    private long hits, misses, evictions, rejections;
+
+    // Approximate read counts of recent keys (TinyLFU): two 4-bit counters per key, packed
+    // 16 to a long, of which the smaller one is the estimate. Every counter is halved after
+    // sampleLimit reads so that the counts follow changes in popularity.
+    private final long[] counters;
+    private final int sampleLimit;
+    private int samples;
+
+    /*
+     * Creates an empty cache that holds at most capacity records. Once it is full, a newly
+     * read record replaces the least recently used one only if its key was read more often
+     * recently, so a burst of one-off lookups does not flush the frequently read words.
+     * @param capacity The maximum number of cached records.
+     */
+    public LookupCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(Math.min(capacity, 1 << 16) * 4 / 3 + 1, 0.75f, true);
+        // Between 8 and 16 counters per cached record, as a power of two
+        this.counters = new long[Integer.highestOneBit(Math.min(capacity, 1 << 24) - 1 | 1) << 1];
+        this.sampleLimit = 10 * Math.min(capacity, 1 << 24);
+    }
+
+    // Returns the cached Record with the specified Key, marking it as the most recently
+    // used, or null if it is not cached
+    public Record get(Key k) {
+        count(k);
+        Record d = entries.get(k);
+        if (d != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return d;
+    }
+
+    // Caches a Record found in the dictionary, if there is room or its key was read more
+    // often than that of the least recently used Record, which it then replaces
+    public void put(Record d) {
+        if (entries.size() >= capacity && !entries.containsKey(d.getKey())) {
+            Key eldest = entries.keySet().iterator().next();
+            if (frequency(d.getKey()) <= frequency(eldest)) {
+                rejections++;
+                return;
+            }
+            entries.remove(eldest);
+            evictions++;
+        }
+        entries.put(d.getKey(), d);
+    }
+
+    // Drops the Record with the specified Key, if it is cached
+    public void invalidate(Key k) {
+        entries.remove(k);
+    }
+
+    // Drops every cached Record, keeping the statistics
+    public void clear() {
+        entries.clear();
+    }
+
+    // Returns the number of cached Records
+    public int size() {
+        return entries.size();
+    }
+
+    // Returns the maximum number of cached Records
+    public int capacity() {
+        return capacity;
+    }
+
+    // Returns the number of gets answered from the cache
+    public long getHits() {
+        return hits;
+    }
+
+    // Returns the number of gets that had to search the dictionary
+    public long getMisses() {
+        return misses;
+    }
+
+    // Returns the number of Records dropped to make room for newer ones
+    public long getEvictions() {
+        return evictions;
+    }
+
+    // Returns the number of Records left out because they were read less often than the
+    // Record they would have replaced
+    public long getRejections() {
+        return rejections;
+    }
+
+    // Returns the fraction of gets answered from the cache, or 0 before the first get
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    // Clears the statistics, keeping the cached Records
+    public void resetStatistics() {
+        hits = misses = evictions = rejections = 0;
+    }
+
+    // Counts a read of k in the frequency sketch, aging every counter now and then
+    private void count(Key k) {
+        int h = spread(k.hashCode());
+        increment(h);
+        increment(Integer.rotateLeft(h, 16) * 0x9E3779B9);
+        if (++samples >= sampleLimit) {
+            samples = 0;
+            for (int i = 0; i < counters.length; i++) {
+                // Halve the 16 counters of the word at once
+                counters[i] = (counters[i] >>> 1) & 0x7777777777777777L;
+            }
+        }
+    }
+
+    // Returns the estimated number of recent reads of k
+    private int frequency(Key k) {
+        int h = spread(k.hashCode());
+        return Math.min(counter(h), counter(Integer.rotateLeft(h, 16) * 0x9E3779B9));
+    }
+
+    // Adds one to the 4-bit counter selected by h, unless it is saturated
+    private void increment(int h) {
+        int index = (h >>> 4) & (counters.length - 1);
+        int shift = (h & 15) << 2;
+        if (((counters[index] >>> shift) & 15) < 15) {
+            counters[index] += 1L << shift;
+        }
+    }
+
+    // Returns the 4-bit counter selected by h
+    private int counter(int h) {
+        return (int) (counters[(h >>> 4) & (counters.length - 1)] >>> ((h & 15) << 2)) & 15;
+    }
+
+    // Mixes the bits of a hash code so that similar labels pick unrelated counters
+    private static int spread(int h) {
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 15);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lookup cache: %d/%d records, %d hits, %d misses (%.1f%% hit rate), %d evictions, %d rejections",
+                size(), capacity, hits, misses, 100 * hitRate(), evictions, rejections);
+    }
+}
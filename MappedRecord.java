@@ -0,0 +1,30 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+public class MappedRecord extends Record {
+    private final ByteBuffer buffer;
+    private final int offset, length;
+    private final Charset charset;
+    private String data;
+
+    // Constructor: Initializes a Record whose data is the given byte range of a (typically
+    // memory-mapped) buffer, decoded with charset the first time it is needed
+    public MappedRecord(Key k, ByteBuffer buffer, int offset, int length, Charset charset) {
+        super(k, null);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+    }
+
+    // Returns the data of the Record, decoding it from the buffer on first use
+    @Override
+    public String getDataItem() {
+        if (data == null) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            data = new String(bytes, charset);
+        }
+        return data;
+    }
+}
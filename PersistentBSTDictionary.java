@@ -0,0 +1,76 @@
+import java.util.Iterator;
+import java.util.List;
+
+public class PersistentBSTDictionary implements BSTDictionaryADT, Iterable<Record> {
+    // Current version of the tree; readers pick it up without locking
+    private volatile PersistentTree tree;
+
+    // Constructor: Initializes an empty dictionary
+    public PersistentBSTDictionary() {
+        this.tree = PersistentTree.EMPTY;
+    }
+
+    // Returns an immutable point-in-time view of the dictionary in O(1). Later puts and
+    // removes create new versions and never change a snapshot that was handed out.
+    public PersistentTree snapshot() {
+        return tree;
+    }
+
+    // Returns the Record with the specified Key.
+    // Returns null if the Record is not in the dictionary.
+    public Record get(Key k) {
+        return tree.get(k);
+    }
+
+    // Inserts a Record into the ordered dictionary.
+    // Throws a DictionaryException if a Record with the same Key already exists.
+    public synchronized void put(Record d) throws DictionaryException {
+        tree = tree.put(d);
+    }
+
+    // Removes the Record with the specified Key from the dictionary.
+    // Throws a DictionaryException if the Record is not in the dictionary.
+    public synchronized void remove(Key k) throws DictionaryException {
+        tree = tree.remove(k);
+    }
+
+    // Returns the successor of the specified Key, which does not need to be in the dictionary.
+    // Returns null if the Key has no successor.
+    public Record successor(Key k) {
+        return tree.successor(k);
+    }
+
+    // Returns the predecessor of the specified Key, which does not need to be in the dictionary.
+    // Returns null if the Key has no predecessor.
+    public Record predecessor(Key k) {
+        return tree.predecessor(k);
+    }
+
+    // Returns the Record with the smallest Key in the dictionary.
+    // Returns null if the dictionary is empty.
+    public Record smallest() {
+        return tree.smallest();
+    }
+
+    // Returns the Record with the largest Key in the dictionary.
+    // Returns null if the dictionary is empty.
+    public Record largest() {
+        return tree.largest();
+    }
+
+    // Returns the number of Records in the dictionary
+    public int size() {
+        return tree.size();
+    }
+
+    // Returns an iterator over a snapshot of the Records in increasing key order,
+    // unaffected by writes made while it is in use
+    public Iterator<Record> iterator() {
+        return tree.iterator();
+    }
+
+    // Returns a list of records starting with a given prefix
+    List<Record> getRecordsStartingWith(String prefix) {
+        return tree.getRecordsStartingWith(prefix);
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public final class PersistentTree implements Iterable<Record> {
+    // The tree with no records
+    public static final PersistentTree EMPTY = new PersistentTree(null);
+
+    private final Node root;
+
+    // Constructor: Wraps an existing (immutable) root node
+    private PersistentTree(Node root) {
+        this.root = root;
+    }
+
+    // Returns the number of records in the tree
+    public int size() {
+        return size(root);
+    }
+
+    // Returns a new tree that also holds d, sharing every subtree off the insertion path with
+    // this one. Throws a DictionaryException if a record with the same key is already present.
+    public PersistentTree put(Record d) throws DictionaryException {
+        return new PersistentTree(insert(root, d));
+    }
+
+    // Returns a new tree without the record whose key is k, sharing every subtree off the
+    // removal path with this one. Throws a DictionaryException if there is no such record.
+    public PersistentTree remove(Key k) throws DictionaryException {
+        return new PersistentTree(delete(root, k));
+    }
+
+    // Returns the record with key k, or null if it is not in the tree
+    public Record get(Key k) {
+        Node node = root;
+        while (node != null) {
+            int compareResult = k.compareTo(node.record.getKey());
+            if (compareResult == 0) {
+                return node.record;
+            }
+            node = compareResult < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    // Returns the record with the smallest key larger than k, or null if there is none.
+    // The key does not need to be in the tree.
+    public Record successor(Key k) {
+        Record candidate = null;
+        Node node = root;
+        while (node != null) {
+            if (k.compareTo(node.record.getKey()) < 0) {
+                candidate = node.record;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return candidate;
+    }
+
+    // Returns the record with the largest key smaller than k, or null if there is none.
+    // The key does not need to be in the tree.
+    public Record predecessor(Key k) {
+        Record candidate = null;
+        Node node = root;
+        while (node != null) {
+            if (k.compareTo(node.record.getKey()) > 0) {
+                candidate = node.record;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return candidate;
+    }
+
+    // Returns the record with the smallest key, or null if the tree is empty
+    public Record smallest() {
+        Node node = root;
+        while (node != null && node.left != null) {
+            node = node.left;
+        }
+        return node != null ? node.record : null;
+    }
+
+    // Returns the record with the largest key, or null if the tree is empty
+    public Record largest() {
+        Node node = root;
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node != null ? node.record : null;
+    }
+
+    // Returns a list of records starting with a given prefix
+    public List<Record> getRecordsStartingWith(String prefix) {
+        List<Record> matchedRecords = new ArrayList<>();
+        String lowerPrefix = prefix.toLowerCase();
+        Iterator<Record> it = iterator(new Key(lowerPrefix, Integer.MIN_VALUE));
+        while (it.hasNext()) {
+            Record record = it.next();
+            if (!record.getKey().getLabel().startsWith(lowerPrefix)) {
+                break;
+            }
+            matchedRecords.add(record);
+        }
+        return matchedRecords;
+    }
+
+    // Returns an iterator over the records in increasing key order
+    public Iterator<Record> iterator() {
+        return iterator(null);
+    }
+
+    // Returns an iterator, in increasing key order, over the records whose keys are at
+    // least from (all records when from is null). The tree never changes, so the iterator
+    // can be used while newer versions are being created.
+    public Iterator<Record> iterator(Key from) {
+        return new TreeIterator(root, from);
+    }
+
+    // Helper method for inserting a record, copying the nodes along the path
+    private static Node insert(Node node, Record d) throws DictionaryException {
+        if (node == null) {
+            return new Node(d, null, null);
+        }
+        int compareResult = d.getKey().compareTo(node.record.getKey());
+        if (compareResult < 0) {
+            return balance(node.record, insert(node.left, d), node.right);
+        } else if (compareResult > 0) {
+            return balance(node.record, node.left, insert(node.right, d));
+        }
+        throw new DictionaryException("Record with the same key already exists");
+    }
+
+    // Helper method for removing a record, copying the nodes along the path
+    private static Node delete(Node node, Key k) throws DictionaryException {
+        if (node == null) {
+            throw new DictionaryException("Key not found in the dictionary");
+        }
+        int compareResult = k.compareTo(node.record.getKey());
+        if (compareResult < 0) {
+            return balance(node.record, delete(node.left, k), node.right);
+        } else if (compareResult > 0) {
+            return balance(node.record, node.left, delete(node.right, k));
+        }
+        if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+        Node smallest = node.right;
+        while (smallest.left != null) {
+            smallest = smallest.left;
+        }
+        return balance(smallest.record, node.left, deleteSmallest(node.right));
+    }
+
+    // Helper method for removing the smallest record of a non-empty subtree
+    private static Node deleteSmallest(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.record, deleteSmallest(node.left), node.right);
+    }
+
+    // Creates a node for record over the given subtrees, rotating once or twice when one
+    // side is two levels taller than the other so the AVL condition holds
+    private static Node balance(Record record, Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.record, left.left, new Node(record, left.right, right));
+            }
+            return new Node(left.right.record, new Node(left.record, left.left, left.right.left),
+                    new Node(record, left.right.right, right));
+        } else if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.record, new Node(record, left, right.left), right.right);
+            }
+            return new Node(right.left.record, new Node(record, left, right.left.left),
+                    new Node(right.record, right.left.right, right.right));
+        }
+        return new Node(record, left, right);
+    }
+
+    // Returns the height of a subtree, where an empty subtree has height 0
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    // Returns the number of records in a subtree
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Immutable tree node; unlike BSTNode it has no parent link, which is what lets
+    // versions share subtrees
+    private static final class Node {
+        final Record record;
+        final Node left, right;
+        final int height, size;
+
+        Node(Record record, Node left, Node right) {
+            this.record = record;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    // In-order iterator that keeps the path of pending nodes on a stack
+    private static final class TreeIterator implements Iterator<Record> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+
+        TreeIterator(Node node, Key from) {
+            while (node != null) {
+                if (from == null || from.compareTo(node.record.getKey()) <= 0) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Record next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            for (Node n = node.right; n != null; n = n.left) {
+                stack.push(n);
+            }
+            return node.record;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RadixTrie {
+    // Root of the trie; its edge is empty and it holds the records with an empty label
+    private final Node root = new Node("");
+
+    // Adds a record under its label. The caller makes sure the key is not already present.
+    public void put(Record d) {
+        String label = d.getKey().getLabel();
+        Node node = root;
+        node.count++;
+        int pos = 0;
+        while (pos < label.length()) {
+            int i = node.find(label.charAt(pos));
+            if (i < 0) {
+                Node leaf = new Node(label.substring(pos));
+                leaf.count = 1;
+                leaf.addRecord(d);
+                node.addChild(-i - 1, leaf);
+                return;
+            }
+            Node child = node.children[i];
+            int common = commonLength(child.edge, label, pos);
+            if (common < child.edge.length()) {
+                // Split the edge where the labels part ways
+                Node middle = new Node(child.edge.substring(0, common));
+                middle.count = child.count;
+                child.edge = child.edge.substring(common);
+                middle.addChild(0, child);
+                node.children[i] = middle;
+                child = middle;
+            }
+            child.count++;
+            node = child;
+            pos += common;
+        }
+        node.addRecord(d);
+    }
+
+    // Removes the record with key k. Returns false if there is no such record.
+    public boolean remove(Key k) {
+        return remove(root, k, 0);
+    }
+
+    // Helper method for removing the record with key k below node, whose edges spell the
+    // first pos characters of the label. Merges nodes left with a single child and no records.
+    private boolean remove(Node node, Key k, int pos) {
+        String label = k.getLabel();
+        if (pos == label.length()) {
+            if (!node.removeRecord(k.getType())) {
+                return false;
+            }
+            node.count--;
+            return true;
+        }
+        int i = node.find(label.charAt(pos));
+        if (i < 0) {
+            return false;
+        }
+        Node child = node.children[i];
+        if (!label.startsWith(child.edge, pos) || !remove(child, k, pos + child.edge.length())) {
+            return false;
+        }
+        node.count--;
+        if (child.count == 0) {
+            node.removeChild(i);
+        } else if (child.recordCount == 0 && child.childCount == 1) {
+            Node only = child.children[0];
+            only.edge = child.edge + only.edge;
+            node.children[i] = only;
+        }
+        return true;
+    }
+
+    // Returns the records whose labels start with prefix, in key order, in time
+    // proportional to the length of the prefix plus the number of records
+    public List<Record> getRecordsStartingWith(String prefix) {
+        Node node = find(prefix);
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        List<Record> matchedRecords = new ArrayList<>(node.count);
+        collect(node, matchedRecords);
+        return matchedRecords;
+    }
+
+    // Returns the number of records whose labels start with prefix, in time proportional
+    // to the length of the prefix
+    public int countPrefix(String prefix) {
+        Node node = find(prefix);
+        return node != null ? node.count : 0;
+    }
+
+    // Returns the number of records in the trie
+    public int size() {
+        return root.count;
+    }
+
+    // Returns an estimate of the bytes held by the trie, assuming a 64-bit JVM with
+    // compressed references and compact Latin-1 strings. The records themselves are
+    // shared with the dictionary and are not counted.
+    public long memoryFootprint() {
+        return footprint(root);
+    }
+
+    // Helper method adding up the footprint of a subtree
+    private static long footprint(Node node) {
+        long bytes = align(12 + 3 * 4 + 3 * 4)                      // Node: edge, children, records, counts
+                + align(12 + 3 * 4) + align(16 + node.edge.length()) // edge String and its bytes
+                + (node.children != null ? align(16 + 4L * node.children.length) : 0)
+                + (node.records != null ? align(16 + 4L * node.records.length) : 0);
+        for (int i = 0; i < node.childCount; i++) {
+            bytes += footprint(node.children[i]);
+        }
+        return bytes;
+    }
+
+    // Rounds an object size up to the 8-byte allocation granularity
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    // Returns the highest node whose label starts with prefix, or null if there is none
+    private Node find(String prefix) {
+        Node node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            int i = node.find(prefix.charAt(pos));
+            if (i < 0) {
+                return null;
+            }
+            Node child = node.children[i];
+            int common = commonLength(child.edge, prefix, pos);
+            if (pos + common == prefix.length()) {
+                return child;
+            } else if (common < child.edge.length()) {
+                return null;
+            }
+            node = child;
+            pos += common;
+        }
+        return node;
+    }
+
+    // Helper method appending the records of a subtree in key order: the labels below a
+    // node all extend its own, and the children are kept sorted by their first character
+    private static void collect(Node node, List<Record> out) {
+        for (int i = 0; i < node.recordCount; i++) {
+            out.add(node.records[i]);
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            collect(node.children[i], out);
+        }
+    }
+
+    // Returns the number of characters edge has in common with label from pos on
+    private static int commonLength(String edge, String label, int pos) {
+        int n = Math.min(edge.length(), label.length() - pos);
+        int i = 0;
+        while (i < n && edge.charAt(i) == label.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // Trie node: the edge leading to it, its children sorted by first character, the
+    // records whose label ends here sorted by type, and the number of records below it
+    private static final class Node {
+        String edge;
+        Node[] children;
+        Record[] records;
+        int childCount, recordCount, count;
+
+        Node(String edge) {
+            this.edge = edge;
+        }
+
+        // Returns the index of the child whose edge starts with c, or (-(insertion point) - 1)
+        int find(char c) {
+            int low = 0, high = childCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char m = children[mid].edge.charAt(0);
+                if (m < c) {
+                    low = mid + 1;
+                } else if (m > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void addChild(int at, Node child) {
+            if (children == null) {
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            children[at] = child;
+            childCount++;
+        }
+
+        void removeChild(int at) {
+            System.arraycopy(children, at + 1, children, at, childCount - at - 1);
+            children[--childCount] = null;
+        }
+
+        void addRecord(Record d) {
+            if (records == null) {
+                records = new Record[1];
+            } else if (recordCount == records.length) {
+                records = Arrays.copyOf(records, recordCount * 2);
+            }
+            int type = d.getKey().getType();
+            int at = recordCount;
+            while (at > 0 && records[at - 1].getKey().getType() > type) {
+                records[at] = records[at - 1];
+                at--;
+            }
+            records[at] = d;
+            recordCount++;
+        }
+
+        boolean removeRecord(int type) {
+            for (int i = 0; i < recordCount; i++) {
+                if (records[i].getKey().getType() == type) {
+                    System.arraycopy(records, i + 1, records, i, recordCount - i - 1);
+                    records[--recordCount] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.*;
+import java.util.*;
 
 public class TestDict {
 
@@ -260,5 +261,957 @@ if (alltests || test == 16)
 	catch (IOException e) {
 	    System.out.println("Cannot open file: large.txt");
 	}
+
+if (alltests || test == 17)
+	// Insert the words of large.txt in sorted order into a balanced dictionary
+	try {
+	    BufferedReader in = new BufferedReader(new FileReader("large.txt"));
+	    List<Record> sorted = new ArrayList<Record>();
+	    String word;
+	    while ((word = in.readLine()) != null)
+			sorted.add(new Record(new Key(word,TEXT),in.readLine()));
+	    in.close();
+	    sorted.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+
+	    BSTDictionary balanced = new BSTDictionary(true);
+	    for (Record r : sorted)
+			balanced.put(r);
+	    balanced.remove(new Key("langate",TEXT));
+	    if (balanced.get(new Key("practic",TEXT)) != null
+			&& balanced.successor(new Key("reel",TEXT)).getKey().getLabel().equals("reem")
+			&& balanced.predecessor(new Key("pony",TEXT)).getKey().getLabel().equals("ponvolant")
+			&& balanced.successor(new Key("land",TEXT)).getKey().getLabel().equals("laniary"))
+			System.out.println("Test 17 passed");
+	    else System.out.println("Test 17 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 17 failed");
+	}
+
+if (alltests || test == 18)
+	// Bulk load a batch with a duplicate key, then a valid batch
+	try {
+	    BSTDictionary bulk = new BSTDictionary(true);
+	    bulk.put(records[0]);
+	    List<Record> batch = new ArrayList<Record>();
+	    for (int i = 4; i >= 0; --i)
+			batch.add(records[i]);
+	    boolean rejected = false;
+	    try {
+			bulk.bulkLoad(batch);
+	    }
+	    catch (DictionaryException e) {
+			rejected = true;
+	    }
+	    batch.remove(records[0]);
+	    bulk.bulkLoad(batch);
+	    if (rejected && bulk.smallest() == records[2] && bulk.largest() == records[0]
+			&& bulk.successor(keys[3]) == records[1])
+			System.out.println("Test 18 passed");
+	    else System.out.println("Test 18 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 18 failed");
+	}
+
+if (alltests || test == 19)
+	// Test successor, predecessor, ceiling and floor with keys that are not in the dictionary
+	try {
+	    BSTDictionary navigable = new BSTDictionary(true);
+	    for (int i = 0; i < 5; ++i)
+			navigable.put(records[i]);
+	    if (navigable.successor(new Key("cat",TEXT)) == records[2]
+			&& navigable.predecessor(new Key("zebra",TEXT)) == records[0]
+			&& navigable.successor(new Key("zebra",TEXT)) == null
+			&& navigable.ceiling(keys[1]) == records[1]
+			&& navigable.higher(keys[1]) == records[4]
+			&& navigable.floor(new Key("d",TEXT)) == records[1]
+			&& navigable.lower(keys[2]) == null)
+			System.out.println("Test 19 passed");
+	    else System.out.println("Test 19 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 19 failed");
+	}
+
+if (alltests || test == 20)
+	// Test lookups on a frozen copy, which must not see later changes
+	try {
+	    BSTDictionary live = new BSTDictionary(true);
+	    for (int i = 0; i < 5; ++i)
+			live.put(records[i]);
+	    FrozenIndex frozen = live.freeze();
+	    live.remove(keys[0]);
+	    if (frozen.get(keys[0]) == records[0] && frozen.get(new Key("schnell",TEXT)) == null
+			&& frozen.successor(keys[3]) == records[1] && frozen.predecessor(keys[3]) == records[2]
+			&& frozen.smallest() == records[2] && frozen.largest() == records[0]
+			&& frozen.getRecordsStartingWith("co").size() == 2)
+			System.out.println("Test 20 passed");
+	    else System.out.println("Test 20 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 20 failed");
+	}
+
+if (alltests || test == 21)
+	// Test the batch operations, which report duplicates and missing keys per record
+	try {
+	    BSTDictionary batch = new BSTDictionary(true);
+	    batch.put(records[0]);
+	    boolean[] inserted = batch.putAll(Arrays.asList(records[1], records[0], records[2], records[1]));
+	    List<Record> found = batch.getAll(Arrays.asList(keys[2], new Key("schnell",TEXT), keys[0]));
+	    boolean[] removed = batch.removeAll(Arrays.asList(keys[1], keys[3]));
+	    if (Arrays.equals(inserted, new boolean[] {true, false, true, false})
+			&& found.get(0) == records[2] && found.get(1) == null && found.get(2) == records[0]
+			&& Arrays.equals(removed, new boolean[] {true, false}) && batch.size() == 2)
+			System.out.println("Test 21 passed");
+	    else System.out.println("Test 21 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 21 failed");
+	}
+
+if (alltests || test == 22)
+	// Test that rebuilding keeps a plain tree shallow when words arrive in sorted order
+	try {
+	    BSTDictionary rebuilt = new BSTDictionary();
+	    rebuilt.setRebuildAlpha(0.7);
+	    for (int i = 0; i < 1000; ++i)
+			rebuilt.put(new Record(new Key("word" + (10000 + i),TEXT),"data"));
+	    for (int i = 0; i < 500; ++i)
+			rebuilt.remove(new Key("word" + (10000 + 2 * i),TEXT));
+	    if (rebuilt.size() == 500 && rebuilt.enableMetrics().getHeight() <= 20
+			&& rebuilt.smallest().getKey().getLabel().equals("word10001"))
+			System.out.println("Test 22 passed");
+	    else System.out.println("Test 22 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 22 failed");
+	}
+
+if (alltests || test == 23)
+	// Test that the lookup cache answers repeated gets and forgets removed records
+	try {
+	    BSTDictionary cached = new BSTDictionary(true);
+	    LookupCache cache = cached.enableCache(2);
+	    for (int i = 0; i < 4; ++i)
+			cached.put(records[i]);
+	    cached.get(keys[0]);
+	    cached.get(keys[0]);
+	    cached.remove(keys[0]);
+	    if (cached.get(keys[0]) == null && cached.get(keys[1]) == records[1]
+			&& cached.get(new Key("schnell",TEXT)) == null && cache.getHits() == 1 && cache.size() == 1)
+			System.out.println("Test 23 passed");
+	    else System.out.println("Test 23 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 23 failed");
+	}
+
+if (alltests || test == 24)
+	// Test that the Bloom filter turns away absent words and forgets removed ones
+	try {
+	    BSTDictionary filtered = new BSTDictionary(true);
+	    for (int i = 0; i < 4; ++i)
+			filtered.put(records[i]);
+	    CountingBloomFilter filter = filtered.enableBloomFilter(0.01, 1 << 16);
+	    filtered.remove(keys[0]);
+	    if (filtered.get(new Key("schnell",TEXT)) == null && filtered.get(keys[0]) == null
+			&& filtered.get(keys[1]) == records[1] && filter.count() == 3 && filter.getNegatives() == 2)
+			System.out.println("Test 24 passed");
+	    else System.out.println("Test 24 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 24 failed");
+	}
+
+if (alltests || test == 25)
+	// Test that words whose lower case depends on the locale are found without a Key
+	try {
+	    BSTDictionary folded = new BSTDictionary(true);
+	    folded.enableBloomFilter(0.01, 1 << 16);
+	    folded.put(new Record(new Key("\u0130stanbul",TEXT),"city"));
+	    folded.put(new Record(new Key("\u039f\u0394\u039f\u03a3",TEXT),"road"));
+	    if (folded.get("\u0130stanbul",TEXT) != null && folded.get("\u039f\u0394\u039f\u03a3",TEXT) != null
+			&& Key.hash("\u0130stanbul",TEXT) == new Key("\u0130stanbul",TEXT).hashCode())
+			System.out.println("Test 25 passed");
+	    else System.out.println("Test 25 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 25 failed");
+	}
+
+if (alltests || test == 26)
+	// Test that the write-ahead log replays whole entries and cuts off a torn one
+	try {
+	    File logFile = File.createTempFile("testdict", ".log");
+	    WriteAheadLog log = new WriteAheadLog(logFile.getPath(), WriteAheadLog.SyncPolicy.ALWAYS, 10);
+	    log.logPut(records[0]);
+	    log.logPut(records[1]);
+	    long complete = logFile.length();
+	    log.logRemove(keys[0]);
+	    log.close();
+	    RandomAccessFile torn = new RandomAccessFile(logFile, "rw");
+	    torn.setLength(logFile.length() - 3);
+	    torn.close();
+	    BSTDictionary replayed = new BSTDictionary(true);
+	    int applied = WriteAheadLog.replay(logFile.getPath(), replayed);
+	    int again = WriteAheadLog.replay(logFile.getPath(), replayed);
+	    long length = logFile.length();
+	    logFile.delete();
+	    if (applied == 2 && again == 0 && length == complete && replayed.size() == 2
+			&& replayed.get(keys[0]).getDataItem().equals(definitions[0]) && replayed.get(keys[1]) != null)
+			System.out.println("Test 26 passed");
+	    else System.out.println("Test 26 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 26 failed");
+	}
+
+if (alltests || test == 27)
+	// Test the array-backed dictionary against the tree: removes with two children, reuse of freed nodes, compaction and labels beyond Latin-1
+	try {
+	    ArrayBSTDictionary array = new ArrayBSTDictionary(128);
+	    BSTDictionary tree = new BSTDictionary(true);
+	    String[] stems = {"w", "\u00e9", "\u0101"};
+	    for (int i = 0; i < 120; ++i) {
+			Record r = new Record(new Key(stems[i % 3] + (100 + i),TEXT), i % 5 == 0 ? "\u20ac" : "");
+			array.put(r);
+			tree.put(r);
+	    }
+	    long footprint = array.memoryFootprint();
+	    for (int i = 0; i < 120; i += 2) {
+			array.remove(new Key(stems[i % 3] + (100 + i),TEXT));
+			tree.remove(new Key(stems[i % 3] + (100 + i),TEXT));
+	    }
+	    for (int i = 120; i < 180; ++i) {
+			Record r = new Record(new Key(stems[i % 3] + (100 + i),TEXT), i % 5 == 0 ? "\u20ac" : "");
+			array.put(r);
+			tree.put(r);
+	    }
+	    List<Record> fromArray = new ArrayList<>(), fromTree = new ArrayList<>();
+	    for (int i = 0; i < 190; i += 7) {
+			Key probe = new Key(stems[i % 3] + (100 + i),TEXT);
+			fromArray.add(array.get(probe));
+			fromArray.add(array.successor(probe));
+			fromArray.add(array.predecessor(probe));
+			fromTree.add(tree.get(probe));
+			fromTree.add(tree.successor(probe));
+			fromTree.add(tree.predecessor(probe));
+	    }
+	    for (String prefix : stems) {
+			fromArray.addAll(array.getRecordsStartingWith(prefix + "1"));
+			fromTree.addAll(tree.getRecordsStartingWith(prefix + "1"));
+	    }
+	    boolean matches = fromArray.size() == fromTree.size();
+	    for (int i = 0; matches && i < fromArray.size(); ++i) {
+			Record a = fromArray.get(i), b = fromTree.get(i);
+			matches = a == null ? b == null
+				: b != null && a.getKey().compareTo(b.getKey()) == 0 && a.getDataItem().equals(b.getDataItem());
+	    }
+	    ArrayBSTDictionary compacted = new ArrayBSTDictionary();
+	    for (int i = 0; i < 100; ++i)
+			compacted.put(new Record(new Key("word" + (100 + i),TEXT), definitions[i % 5] + i));
+	    long full = compacted.memoryFootprint();
+	    for (int i = 0; i < 100; ++i)
+			if (i % 10 != 0)
+			    compacted.remove(new Key("word" + (100 + i),TEXT));
+	    if (matches && array.size() == 120 && array.memoryFootprint() == footprint
+			&& compacted.memoryFootprint() < full && compacted.size() == 10
+			&& compacted.get(new Key("word190",TEXT)).getDataItem().equals(definitions[0] + 90))
+			System.out.println("Test 27 passed");
+	    else System.out.println("Test 27 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 27 failed");
+	}
+
+if (alltests || test == 28)
+	// Test the prefix index against the plain tree while its edges are split by puts and merged back by removes
+	try {
+	    BSTDictionary indexed = new BSTDictionary(true, true), plain = new BSTDictionary(true);
+	    // At most two children per node, so that a trie built afresh has arrays of the same sizes
+	    String[] labels = {"carbon", "car", "cart", "cat", "ca", "c", "dog", "do", "carbonate"};
+	    for (int type = 2; type <= 3; ++type)
+			for (String label : labels) {
+			    Record r = new Record(new Key(label,type), label + type);
+			    indexed.put(r);
+			    plain.put(r);
+			}
+	    String[] prefixes = {"", "c", "ca", "car", "carb", "carbon", "cart", "carts", "d", "do", "dot", "e"};
+	    boolean matches = true;
+	    for (int round = 0; round < 2; ++round) {
+			for (String prefix : prefixes) {
+			    List<Record> a = indexed.getRecordsStartingWith(prefix), b = plain.getRecordsStartingWith(prefix);
+			    matches &= indexed.countPrefix(prefix) == plain.countPrefix(prefix) && a.size() == b.size();
+			    for (int i = 0; matches && i < a.size(); ++i)
+				matches = a.get(i) == b.get(i);
+			}
+			// Leave "car" and "carbon" without records and a single child each, to be merged
+			for (String label : new String[] {"car", "carbon", "cart", "cat", "do"})
+			    for (int type = 2; round == 0 && type <= 3; ++type) {
+				indexed.remove(new Key(label,type));
+				plain.remove(new Key(label,type));
+			    }
+	    }
+	    BSTDictionary fresh = new BSTDictionary(true, true);
+	    for (Record r : plain.getRecordsStartingWith(""))
+			fresh.put(r);
+	    boolean missing = false;
+	    try {
+			indexed.remove(new Key("car",2));
+	    }
+	    catch (DictionaryException e) {
+			missing = true;
+	    }
+	    if (matches && missing && indexed.size() == 8 && indexed.countPrefix("car") == 2
+			&& indexed.prefixIndexFootprint() == fresh.prefixIndexFootprint())
+			System.out.println("Test 28 passed");
+	    else System.out.println("Test 28 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 28 failed");
+	}
+
+if (alltests || test == 29)
+	// Test rank, select, countRange, countPrefix and paged prefix listings against a sorted list, before and after removes
+	try {
+	    boolean matches = true;
+	    for (int kind = 0; kind < 2; ++kind) {
+			BSTDictionary d = new BSTDictionary(kind == 1);
+			List<Record> sorted = new ArrayList<>();
+			for (int i = 0; i < 300; ++i) {
+			    Record r = new Record(new Key("w" + (1000 + (i * 37) % 300 * 3),2 + i % 2), "" + i);
+			    d.put(r);
+			    sorted.add(r);
+			}
+			for (int round = 0; round < 2; ++round) {
+			    sorted.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+			    for (int i = 0; i < sorted.size(); ++i)
+				matches &= d.select(i) == sorted.get(i) && d.rank(sorted.get(i).getKey()) == i;
+			    matches &= d.select(-1) == null && d.select(sorted.size()) == null;
+			    for (int from = 995; from < 1920; from += 41)
+				for (int to = from - 50; to < from + 300; to += 67) {
+				    Key fromKey = new Key("w" + from,2), toKey = new Key("w" + to,3);
+				    int count = 0;
+				    for (Record r : sorted)
+					if (r.getKey().compareTo(fromKey) >= 0 && r.getKey().compareTo(toKey) < 0)
+					    ++count;
+				    matches &= d.countRange(fromKey, toKey) == count;
+				}
+			    for (String prefix : new String[] {"", "w", "W1", "w10", "w100", "w1003", "w10030", "w2", "x"}) {
+				List<Record> all = new ArrayList<>();
+				for (Record r : sorted)
+				    if (r.getKey().getLabel().startsWith(prefix.toLowerCase()))
+					all.add(r);
+				List<Record> paged = new ArrayList<>();
+				for (int offset = 0; offset <= all.size(); offset += 7)
+				    paged.addAll(d.getRecordsStartingWith(prefix, offset, 7));
+				matches &= d.countPrefix(prefix) == all.size() && paged.equals(all)
+				    && d.getRecordsStartingWith(prefix, all.size(), 7).isEmpty()
+				    && d.getRecordsStartingWith(prefix, 0, 0).isEmpty();
+			    }
+			    for (int i = 0; round == 0 && i < sorted.size(); i += 3)
+				d.remove(sorted.remove(i).getKey());
+			}
+	    }
+	    if (matches)
+			System.out.println("Test 29 passed");
+	    else System.out.println("Test 29 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 29 failed");
+	}
+
+if (alltests || test == 30)
+	// Test the iterators and the spliterator: both directions, bounded ranges, splits and parallel streams keep key order
+	try {
+	    boolean matches = true;
+	    for (int kind = 0; kind < 2; ++kind) {
+			BSTDictionary d = new BSTDictionary(kind == 1);
+			List<Record> sorted = new ArrayList<>();
+			for (int i = 0; i < 500; ++i) {
+			    Record r = new Record(new Key("w" + (10000 + (250 + i * 211) % 500 * 2),2), "" + i);
+			    d.put(r);
+			    sorted.add(r);
+			}
+			sorted.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+			List<Record> ascending = new ArrayList<>(), descending = new ArrayList<>();
+			d.iterator().forEachRemaining(ascending::add);
+			d.descendingIterator().forEachRemaining(descending::add);
+			Collections.reverse(descending);
+			matches &= ascending.equals(sorted) && descending.equals(sorted);
+			// Bounds on present and absent keys, empty and reversed ranges, and open sides
+			String[] bounds = {null, "w09999", "w10000", "w10001", "w10500", "w10999", "w11000"};
+			for (String from : bounds)
+			    for (String to : bounds) {
+				Key fromKey = from == null ? null : new Key(from,2), toKey = to == null ? null : new Key(to,2);
+				List<Record> expected = new ArrayList<>(), actual = new ArrayList<>();
+				for (Record r : sorted)
+				    if ((fromKey == null || r.getKey().compareTo(fromKey) >= 0) && (toKey == null || r.getKey().compareTo(toKey) < 0))
+					expected.add(r);
+				d.iterator(fromKey, toKey).forEachRemaining(actual::add);
+				matches &= actual.equals(expected);
+			    }
+			// Split repeatedly, keeping each prefix before the rest, and read the parts in turn
+			List<Spliterator<Record>> parts = new ArrayList<>();
+			parts.add(d.spliterator());
+			for (int round = 0; round < 6; ++round)
+			    for (int i = parts.size() - 1; i >= 0; --i) {
+				Spliterator<Record> prefix = parts.get(i).trySplit();
+				if (prefix != null)
+				    parts.add(i, prefix);
+			    }
+			List<Record> split = new ArrayList<>();
+			for (Spliterator<Record> part : parts)
+			    part.forEachRemaining(split::add);
+			matches &= parts.size() > 8 && split.equals(sorted)
+			    && Arrays.equals(d.parallelStream().toArray(), sorted.toArray())
+			    && d.parallelStream().filter(r -> r.getKey().getLabel().endsWith("0")).count() == 100;
+	    }
+	    Iterator<Record> empty = new BSTDictionary().descendingIterator();
+	    boolean exhausted = false;
+	    try {
+			empty.next();
+	    }
+	    catch (NoSuchElementException e) {
+			exhausted = !empty.hasNext();
+	    }
+	    if (matches && exhausted)
+			System.out.println("Test 30 passed");
+	    else System.out.println("Test 30 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 30 failed");
+	}
+
+if (alltests || test == 31)
+	// Test loading a file of several chunks with mixed line endings, and one whose last label has no data line
+	try {
+	    File input = File.createTempFile("testdict", ".txt");
+	    String[] endings = {"\r\n", "\n", "\r\n", "\r", "\r\n"};
+	    Writer writer = new BufferedWriter(new FileWriter(input));
+	    for (int i = 0; i < 80000; ++i) {
+			writer.write("Word" + i + endings[i % 5]);
+			if (i % 3 == 0) writer.write("/ translation " + i + " " + endings[(i + 1) % 5]);
+			else if (i % 3 == 1) writer.write(" meaning of word " + i + endings[(i + 2) % 5]);
+			else writer.write(" picture" + i + ".jpg" + endings[(i + 3) % 5]);
+	    }
+	    writer.close();
+	    long length = input.length();
+	    List<Record> loaded = DictionaryLoader.readRecords(input.getPath());
+	    boolean matches = loaded.size() == 80000;
+	    for (int i = 0; matches && i < 80000; ++i) {
+			Key k = loaded.get(i).getKey();
+			String data = i % 3 == 0 ? "translation " + i : i % 3 == 1 ? "meaning of word " + i : "picture" + i + ".jpg";
+			matches = k.getLabel().equals("word" + i) && k.getType() == (i % 3 == 0 ? 2 : i % 3 == 1 ? 1 : 6)
+			    && loaded.get(i).getDataItem().equals(data);
+	    }
+	    writer = new FileWriter(input);
+	    writer.write("alpha\r\n beta\r\ngamma\r\n");
+	    writer.close();
+	    String message = "";
+	    try {
+			DictionaryLoader.readRecords(input.getPath());
+	    }
+	    catch (IOException e) {
+			message = e.getMessage();
+	    }
+	    input.delete();
+	    if (matches && length > 2 << 20 && message.equals("No data line for label gamma"))
+			System.out.println("Test 31 passed");
+	    else System.out.println("Test 31 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 31 failed");
+	}
+
+if (alltests || test == 32)
+	// Test the concurrent dictionary: duplicate and missing keys, navigation with absent keys, and racing writers
+	try {
+	    ConcurrentBSTDictionary shared = new ConcurrentBSTDictionary();
+	    for (int i = 0; i < 5; ++i)
+			shared.put(records[i]);
+	    int rejected = 0;
+	    try {
+			shared.put(new Record(new Key("HOMEWORK",TEXT), "again"));
+	    }
+	    catch (DictionaryException e) {
+			++rejected;
+	    }
+	    try {
+			shared.remove(new Key("cat",TEXT));
+	    }
+	    catch (DictionaryException e) {
+			++rejected;
+	    }
+	    boolean navigates = shared.get(keys[0]) == records[0] && shared.get(new Key("cat",TEXT)) == null
+			&& shared.successor(new Key("cat",TEXT)) == records[2] && shared.predecessor(new Key("cat",TEXT)) == null
+			&& shared.successor(new Key("zebra",TEXT)) == null && shared.predecessor(new Key("zebra",TEXT)) == records[0]
+			&& shared.successor(keys[2]) == records[3] && shared.predecessor(new Key("course",TEXT + 1)) == records[1]
+			&& shared.smallest() == records[2] && shared.largest() == records[0]
+			&& shared.getRecordsStartingWith("CO").equals(Arrays.asList(records[3], records[1]));
+	    // Four threads race to put the same keys, and once they are done each removes its own quarter of them
+	    int[] succeeded = new int[4];
+	    for (int phase = 0; phase < 2; ++phase) {
+			Thread[] writers = new Thread[4];
+			for (int t = 0; t < 4; ++t) {
+			    final int id = t;
+			    final boolean removing = phase == 1;
+			    writers[t] = new Thread(() -> {
+				    for (int i = removing ? id : 0; i < 2000; i += removing ? 8 : 1)
+					try {
+					    if (removing)
+						shared.remove(new Key("racer" + i,TEXT));
+					    else shared.put(new Record(new Key("racer" + i,TEXT), "" + id));
+					    ++succeeded[id];
+					}
+					catch (DictionaryException e) {
+					}
+				});
+			    writers[t].start();
+			}
+			for (Thread writer : writers)
+			    writer.join();
+	    }
+	    if (rejected == 2 && navigates && succeeded[0] + succeeded[1] + succeeded[2] + succeeded[3] == 3000
+			&& shared.size() == 1005 && shared.get(new Key("racer0",TEXT)) == null && shared.get(new Key("racer4",TEXT)) != null
+			&& shared.getRecordsStartingWith("racer").size() == 1000)
+			System.out.println("Test 32 passed");
+	    else System.out.println("Test 32 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 32 failed");
+	}
+
+if (alltests || test == 33)
+	// Test the persistent dictionary: failed writes leave the version alone, navigation with absent keys, and snapshots and iterators that do not see later writes
+	try {
+	    PersistentBSTDictionary versioned = new PersistentBSTDictionary();
+	    for (int i = 0; i < 5; ++i)
+			versioned.put(records[i]);
+	    PersistentTree before = versioned.snapshot();
+	    Iterator<Record> it = versioned.iterator();
+	    Iterator<Record> fromCat = before.iterator(new Key("cat",TEXT));
+	    int rejected = 0;
+	    try {
+			versioned.put(new Record(new Key("HOMEWORK",TEXT), "again"));
+	    }
+	    catch (DictionaryException e) {
+			++rejected;
+	    }
+	    try {
+			versioned.remove(new Key("cat",TEXT));
+	    }
+	    catch (DictionaryException e) {
+			++rejected;
+	    }
+	    boolean unchanged = versioned.snapshot() == before;
+	    boolean navigates = versioned.get(new Key("cat",TEXT)) == null
+			&& versioned.successor(new Key("cat",TEXT)) == records[2] && versioned.predecessor(new Key("cat",TEXT)) == null
+			&& versioned.successor(new Key("zebra",TEXT)) == null && versioned.predecessor(new Key("zebra",TEXT)) == records[0]
+			&& versioned.successor(keys[2]) == records[3] && versioned.predecessor(new Key("course",TEXT + 1)) == records[1]
+			&& versioned.smallest() == records[2] && versioned.largest() == records[0]
+			&& versioned.getRecordsStartingWith("CO").equals(Arrays.asList(records[3], records[1]));
+	    Record cat = new Record(new Key("cat",TEXT), "A small animal");
+	    versioned.put(cat);
+	    versioned.remove(keys[0]);
+	    versioned.remove(keys[3]);
+	    List<Record> seen = new ArrayList<>(), seenFromCat = new ArrayList<>();
+	    it.forEachRemaining(seen::add);
+	    fromCat.forEachRemaining(seenFromCat::add);
+	    List<Record> now = new ArrayList<>();
+	    for (Record r : versioned)
+			now.add(r);
+	    if (rejected == 2 && unchanged && navigates
+			&& seen.equals(Arrays.asList(records[2], records[3], records[1], records[4], records[0])) && seenFromCat.equals(seen)
+			&& before.size() == 5 && before.get(keys[0]) == records[0] && before.get(cat.getKey()) == null
+			&& now.equals(Arrays.asList(cat, records[2], records[1], records[4])) && versioned.size() == 4
+			&& PersistentTree.EMPTY.size() == 0 && PersistentTree.EMPTY.put(cat).size() == 1 && PersistentTree.EMPTY.smallest() == null)
+			System.out.println("Test 33 passed");
+	    else System.out.println("Test 33 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 33 failed");
+	}
+
+if (alltests || test == 34)
+	// Test that splaying gets, hits and misses alike, keep the records, their order and the order statistics, and cannot be combined with rebuilding
+	try {
+	    BSTDictionary splayed = new BSTDictionary();
+	    List<Record> sorted = new ArrayList<>();
+	    for (int i = 0; i < 400; ++i) {
+			Record r = new Record(new Key("s" + (1000 + (200 + i * 173) % 400 * 2),TEXT), "" + i);
+			splayed.put(r);
+			sorted.add(r);
+	    }
+	    sorted.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+	    splayed.setSplaying(true);
+	    boolean found = true;
+	    for (int j = 0; j < 3000; ++j) {
+			// Odd numbers and numbers past the last word are misses
+			int n = 1000 + (j * j + 7 * j) % 900;
+			Record expected = n % 2 == 0 && n < 1800 ? sorted.get((n - 1000) / 2) : null;
+			found &= (j % 2 == 0 ? splayed.get(new Key("s" + n,TEXT)) : splayed.get("S" + n, TEXT)) == expected;
+	    }
+	    for (int i = 0; i < 400; i += 7)
+			splayed.remove(sorted.get(i).getKey());
+	    for (int i = 399 / 7 * 7; i >= 0; i -= 7)
+			sorted.remove(i);
+	    found &= splayed.getAll(Arrays.asList(sorted.get(5).getKey(), new Key("s999",TEXT), sorted.get(1).getKey()))
+			.equals(Arrays.asList(sorted.get(5), null, sorted.get(1)));
+	    List<Record> inOrder = new ArrayList<>();
+	    splayed.iterator().forEachRemaining(inOrder::add);
+	    boolean ordered = inOrder.equals(sorted) && splayed.size() == sorted.size();
+	    for (int i = 0; i < sorted.size(); ++i)
+			ordered &= splayed.select(i) == sorted.get(i) && splayed.rank(sorted.get(i).getKey()) == i;
+	    String refused = "";
+	    try {
+			splayed.setRebuildAlpha(0.75);
+	    }
+	    catch (IllegalStateException e) {
+			refused += "rebuild ";
+	    }
+	    splayed.setSplaying(false);
+	    splayed.setRebuildAlpha(0.75);
+	    try {
+			splayed.setSplaying(true);
+	    }
+	    catch (IllegalStateException e) {
+			refused += "splay ";
+	    }
+	    try {
+			new BSTDictionary(true).setSplaying(true);
+	    }
+	    catch (UnsupportedOperationException e) {
+			refused += "balanced";
+	    }
+	    if (found && ordered && refused.equals("rebuild splay balanced"))
+			System.out.println("Test 34 passed");
+	    else System.out.println("Test 34 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 34 failed");
+	}
+
+if (alltests || test == 35)
+	// Test that a sorted batch of gets goes through the Bloom filter, the cache and the metrics like single gets
+	try {
+	    BSTDictionary fronted = new BSTDictionary(true);
+	    for (int i = 0; i < 5; ++i)
+			fronted.put(records[i]);
+	    LookupCache cache = fronted.enableCache(8);
+	    CountingBloomFilter filter = fronted.enableBloomFilter(0.01, 1 << 16);
+	    DictionaryMetrics metrics = fronted.enableMetrics();
+	    List<Key> sortedKeys = Arrays.asList(keys[2], keys[3], keys[1], new Key("cz",TEXT), keys[0]);
+	    List<Record> expected = Arrays.asList(records[2], records[3], records[1], null, records[0]);
+	    List<Record> first = fronted.getAll(sortedKeys);
+	    long walkedFirst = cache.getMisses() + filter.getNegatives();
+	    List<Record> second = fronted.getAll(sortedKeys);
+	    if (first.equals(expected) && second.equals(expected) && walkedFirst == 5 && cache.getHits() == 4
+			&& filter.getQueries() == 10 && metrics.getCallCounts()[0] == 10)
+			System.out.println("Test 35 passed");
+	    else System.out.println("Test 35 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 35 failed");
+	}
+
+if (alltests || test == 36)
+	// Test small batches, which are put and removed in one walk down the tree, against single puts and removes
+	try {
+	    boolean matches = true;
+	    for (int kind = 0; kind < 2; ++kind) {
+			BSTDictionary batched = new BSTDictionary(kind == 1), single = new BSTDictionary(kind == 1);
+			for (int i = 0; i < 400; ++i) {
+			    Record r = new Record(new Key("b" + (1000 + (i * 131) % 400 * 3),TEXT), "" + i);
+			    batched.put(r);
+			    single.put(r);
+			}
+			for (int round = 0; round < 100; ++round) {
+			    // Unsorted batches of twenty with neighbouring and distant keys, some present, some repeated
+			    List<Record> puts = new ArrayList<>();
+			    List<Key> removes = new ArrayList<>();
+			    for (int i = 0; i < 20; ++i) {
+				puts.add(new Record(new Key("b" + (1000 + (round * 97 + i * 61) % 1300),TEXT), "r" + round));
+				removes.add(new Key("b" + (1000 + (round * 53 + i * (i % 2 == 0 ? 3 : 89)) % 1300),TEXT));
+			    }
+			    puts.add(puts.get(3));
+			    removes.add(removes.get(5));
+			    boolean[] inserted = batched.putAll(puts), removed = batched.removeAll(removes);
+			    for (int i = 0; i < puts.size(); ++i)
+				try {
+				    single.put(puts.get(i));
+				    matches &= inserted[i];
+				}
+				catch (DictionaryException e) {
+				    matches &= !inserted[i];
+				}
+			    for (int i = 0; i < removes.size(); ++i)
+				try {
+				    single.remove(removes.get(i));
+				    matches &= removed[i];
+				}
+				catch (DictionaryException e) {
+				    matches &= !removed[i];
+				}
+			}
+			List<Record> a = new ArrayList<>(), b = new ArrayList<>();
+			batched.iterator().forEachRemaining(a::add);
+			single.iterator().forEachRemaining(b::add);
+			matches &= a.equals(b) && batched.size() == single.size();
+			for (int i = 0; i < a.size(); ++i)
+			    matches &= batched.select(i) == a.get(i) && batched.rank(a.get(i).getKey()) == i;
+	    }
+	    if (matches)
+			System.out.println("Test 36 passed");
+	    else System.out.println("Test 36 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 36 failed");
+	}
+
+if (alltests || test == 37)
+	// Test that a write failing partway through an entry stops the log, so that no entry follows the torn one
+	try {
+	    File logFile = File.createTempFile("testdict", ".log");
+	    final long[] room = {Long.MAX_VALUE};
+	    // A disk with room for only room[0] more bytes
+	    WriteAheadLog log = new WriteAheadLog(logFile.getPath(), WriteAheadLog.SyncPolicy.ALWAYS, 10) {
+		    @Override
+		    int writeSome(java.nio.ByteBuffer source) throws IOException {
+			if (room[0] == 0)
+			    throw new IOException("No space left on device");
+			java.nio.ByteBuffer part = source.duplicate();
+			part.limit(part.position() + (int) Math.min(part.remaining(), room[0]));
+			int written = super.writeSome(part);
+			source.position(part.position());
+			room[0] -= written;
+			return written;
+		    }
+		};
+	    log.logPut(records[0]);
+	    log.logPut(records[1]);
+	    long complete = logFile.length();
+	    room[0] = 5;
+	    int refused = 0;
+	    try {
+			log.logPut(records[2]);
+	    }
+	    catch (IOException e) {
+			++refused;
+	    }
+	    room[0] = Long.MAX_VALUE;
+	    try {
+			log.logRemove(keys[0]);
+	    }
+	    catch (IOException e) {
+			++refused;
+	    }
+	    log.close();
+	    long torn = logFile.length();
+	    BSTDictionary replayed = new BSTDictionary(true);
+	    int applied = WriteAheadLog.replay(logFile.getPath(), replayed);
+	    long length = logFile.length();
+	    logFile.delete();
+	    if (refused == 2 && torn == complete + 5 && applied == 2 && length == complete && replayed.size() == 2
+			&& replayed.get(keys[0]) != null && replayed.get(keys[1]) != null)
+			System.out.println("Test 37 passed");
+	    else System.out.println("Test 37 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 37 failed");
+	}
+
+if (alltests || test == 38)
+	// Test the binary snapshot: a save and load round trip, rejection of a corrupt count and a truncated file, and a text file that starts like one
+	try {
+	    BSTDictionary saved = new BSTDictionary(true);
+	    for (int i = 0; i < 5; ++i)
+			saved.put(records[i]);
+	    saved.put(new Record(new Key("caf\u00e9",TEXT), "\u20ac 3, \u00e0 emporter"));
+	    saved.put(new Record(new Key("caf\u00e9",6), "cafe.jpg"));
+	    saved.put(new Record(new Key("empty",1), ""));
+	    File snapshot = File.createTempFile("testdict", ".bin");
+	    DictionarySnapshot.save(saved, snapshot.getPath());
+	    List<Record> loaded = DictionarySnapshot.load(snapshot.getPath());
+	    List<Record> expected = new ArrayList<>();
+	    saved.iterator().forEachRemaining(expected::add);
+	    boolean matches = loaded.size() == expected.size() && DictionarySnapshot.isSnapshot(snapshot.getPath());
+	    for (int i = 0; matches && i < loaded.size(); ++i) {
+			Record a = loaded.get(i), b = expected.get(i);
+			matches = a instanceof MappedRecord && a.getKey().getLabel().equals(b.getKey().getLabel())
+			    && a.getKey().getType() == b.getKey().getType() && a.getDataItem().equals(b.getDataItem());
+	    }
+	    long length = snapshot.length();
+	    String[] errors = new String[3];
+	    for (int damage = 0; damage < 3; ++damage) {
+			DictionarySnapshot.save(saved, snapshot.getPath());
+			RandomAccessFile file = new RandomAccessFile(snapshot, "rw");
+			if (damage == 0) {
+			    // A count no file of this length can hold
+			    file.seek(8);
+			    file.writeInt(Integer.MAX_VALUE);
+			} else if (damage == 1) {
+			    // One record more than the file has
+			    file.seek(8);
+			    file.writeInt(expected.size() + 1);
+			} else file.setLength(length - 3);
+			file.close();
+			try {
+			    DictionarySnapshot.load(snapshot.getPath());
+			}
+			catch (IOException e) {
+			    errors[damage] = e.getMessage();
+			}
+	    }
+	    Writer text = new FileWriter(snapshot);
+	    text.write("BSTS\r\n/ A file format\r\n");
+	    text.close();
+	    boolean textIsSnapshot = DictionarySnapshot.isSnapshot(snapshot.getPath());
+	    snapshot.delete();
+	    if (matches && !textIsSnapshot && errors[0] != null && errors[0].startsWith("Corrupt snapshot record count")
+			&& errors[1] != null && errors[1].startsWith("Truncated snapshot")
+			&& errors[2] != null && errors[2].startsWith("Truncated snapshot"))
+			System.out.println("Test 38 passed");
+	    else System.out.println("Test 38 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 38 failed");
+	}
+
+if (alltests || test == 39)
+	// Test that the metrics read the height and depth counts of every kind of tree, and count depths without waiting for the tree's monitor
+	try {
+	    boolean consistent = true;
+	    for (int kind = 0; kind < 3; ++kind) {
+			BSTDictionary shaped = new BSTDictionary(kind == 2);
+			if (kind == 0) shaped.setRebuildAlpha(0.7);
+			if (kind == 1) shaped.setSplaying(true);
+			DictionaryMetrics metrics = shaped.enableMetrics();
+			for (int i = 0; i < 600; ++i) {
+			    shaped.put(new Record(new Key("word" + (10000 + i * 7 % 600),TEXT),"data"));
+			    if (i % 3 == 2) shaped.remove(new Key("word" + (10000 + (i - 2) * 7 % 600),TEXT));
+			    if (i % 5 == 0) shaped.get(new Key("word" + (10000 + i / 2 * 7 % 600),TEXT));
+			    int[] depths = metrics.getDepthCounts();
+			    int sum = 0;
+			    for (int count : depths) sum += count;
+			    consistent = consistent && sum == shaped.size() && depths.length == metrics.getHeight();
+			}
+	    }
+	    BinarySearchTree tree = new BinarySearchTree();
+	    tree.setShared(true);
+	    for (int i = 0; i < 5; ++i)
+			tree.insert(tree.getRoot(), records[i]);
+	    DictionaryMetrics metrics = new DictionaryMetrics(tree);
+	    int[][] seen = new int[1][];
+	    Thread reader = new Thread(() -> seen[0] = metrics.getDepthCounts());
+	    reader.setDaemon(true);
+	    synchronized (tree) {
+			reader.start();
+			reader.join(5000);
+	    }
+	    boolean cachedAgain = Arrays.equals(metrics.getDepthCounts(), seen[0]);
+	    tree.remove(tree.getRoot(), keys[3]);
+	    if (consistent && seen[0] != null && Arrays.equals(seen[0], new int[] {1, 1, 2, 1}) && cachedAgain
+			&& Arrays.equals(metrics.getDepthCounts(), new int[] {1, 1, 2}) && metrics.getHeight() == 3)
+			System.out.println("Test 39 passed");
+	    else System.out.println("Test 39 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 39 failed");
+	}
+
+if (alltests || test == 40)
+	// Test range against the bounded iterator with bounds that exist, bounds that are absent, an empty range and reversed bounds
+	try {
+	    boolean matches = true;
+	    String[][] bounds = {{"word1010", "word1050"}, {"word1011", "word1051"}, {"word1020", "word1020"},
+			{"word1050", "word1010"}, {"a", "z"}, {"word1398", "z"}, {"word1399", "z"}};
+	    int[] expected = {20, 20, 0, 0, 200, 1, 0};
+	    for (int kind = 0; kind < 2; ++kind) {
+			BSTDictionary ranged = new BSTDictionary(kind == 1);
+			for (int i = 0; i < 200; ++i)
+			    ranged.put(new Record(new Key("word" + (1000 + 2 * i),TEXT),"data" + i));
+			for (int b = 0; b < bounds.length; ++b) {
+			    Key from = new Key(bounds[b][0],TEXT), to = new Key(bounds[b][1],TEXT);
+			    List<Record> found = ranged.range(from, to);
+			    List<Record> iterated = new ArrayList<>();
+			    ranged.iterator(from, to).forEachRemaining(iterated::add);
+			    matches = matches && found.equals(iterated) && found.size() == expected[b]
+					&& ranged.countRange(from, to) == expected[b];
+			}
+	    }
+	    BSTDictionary small = new BSTDictionary();
+	    for (int i = 0; i < 5; ++i)
+			small.put(records[i]);
+	    List<Record> middle = small.range(keys[3], keys[4]);
+	    List<Record> typed = small.range(keys[1], new Key(words[1],TEXT + 1));
+	    if (matches && middle.size() == 2 && middle.get(0) == records[3] && middle.get(1) == records[1]
+			&& typed.size() == 1 && typed.get(0) == records[1])
+			System.out.println("Test 40 passed");
+	    else System.out.println("Test 40 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 40 failed");
+	}
+
+if (alltests || test == 41)
+	// Test a batch script run through the Interface command handler, checking its output and the dictionary it leaves in a snapshot and in the log
+	try {
+	    File input = File.createTempFile("testdict", ".txt");
+	    File commands = File.createTempFile("testdict", ".cmd");
+	    File logFile = File.createTempFile("testdict", ".log");
+	    File snapshot = File.createTempFile("testdict", ".bin");
+	    Writer text = new FileWriter(input);
+	    text.write("homework\n Very enjoyable work\ncourse\n A series of talks\nclass\n/clase\n");
+	    text.close();
+	    text = new FileWriter(commands);
+	    text.write("define homework\nadd desk 1 A table to work at\nadd course 1 Duplicate\ndelete course 1\n"
+			+ "delete missing 1\n\ndefine course\ntranslate class\nlist c\ndefine desk\nsave " + snapshot.getPath()
+			+ "\nexit\nadd late 1 Never processed\n");
+	    text.close();
+	    PrintStream stdout = System.out, stderr = System.err;
+	    ByteArrayOutputStream printed = new ByteArrayOutputStream(), reported = new ByteArrayOutputStream();
+	    try {
+			System.setOut(new PrintStream(printed, true));
+			System.setErr(new PrintStream(reported, true));
+			Interface.main(new String[] {"-batch", commands.getPath(), "-wal", logFile.getPath(), input.getPath()});
+	    }
+	    finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+	    }
+	    String[] lines = printed.toString().split("\r?\n");
+	    List<Record> saved = DictionarySnapshot.load(snapshot.getPath());
+	    BSTDictionary replayed = new BSTDictionary(true);
+	    replayed.bulkLoad(DictionaryLoader.readRecords(input.getPath()));
+	    int changes = WriteAheadLog.replay(logFile.getPath(), replayed);
+	    List<Record> logged = new ArrayList<>();
+	    replayed.iterator().forEachRemaining(logged::add);
+	    String[][] expected = {{"class", "2", "clase"}, {"desk", "1", "A table to work at"}, {"homework", "1", "Very enjoyable work"}};
+	    boolean contents = saved.size() == expected.length && logged.size() == expected.length;
+	    for (int i = 0; contents && i < expected.length; ++i) {
+			for (Record record : new Record[] {saved.get(i), logged.get(i)})
+			    contents = contents && record.getKey().getLabel().equals(expected[i][0])
+					&& record.getKey().getType() == Integer.parseInt(expected[i][1]) && record.getDataItem().equals(expected[i][2]);
+	    }
+	    input.delete();
+	    commands.delete();
+	    logFile.delete();
+	    snapshot.delete();
+	    if (contents && changes == 2 && lines.length == 10 && lines[0].equals("Very enjoyable work")
+			&& lines[3].equals("Record removed successfully")
+			&& lines[4].equals("No record in the ordered dictionary has key (missing, 1)")
+			&& lines[5].equals("The word course is not in the ordered dictionary") && lines[6].equals("clase")
+			&& lines[7].equals("class") && lines[8].equals("A table to work at")
+			&& lines[9].equals("Saved 3 records to " + snapshot.getPath())
+			&& reported.toString().startsWith("Processed 10 commands"))
+			System.out.println("Test 41 passed");
+	    else System.out.println("Test 41 failed");
+	}
+	catch (Exception e) {
+	    System.out.println("Test 41 failed");
+	}
     }
 }
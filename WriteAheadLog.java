@@ -0,0 +1,255 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class WriteAheadLog implements Closeable {
+    // When appended entries are forced to the storage device
+    public enum SyncPolicy {
+        // Every append is written and forced before it returns
+        ALWAYS,
+        // Appends are buffered and forced together every groupMillis, or on sync()
+        GROUP,
+        // Appends are written when the buffer fills and never forced; the OS decides
+        NONE
+    }
+
+    // Entry operations
+    private static final byte PUT = 1, REMOVE = 2;
+
+    // Bytes before the payload of an entry: payload length and CRC32 of the payload
+    private static final int ENTRY_HEADER = 8;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService flusher;
+
+    // Whether bytes were written since the last force
+    private boolean dirty;
+
+    // The error of a write that failed, after which the file may end in a torn entry. Later
+    // appends are refused, since replay would stop at that entry and drop everything after it.
+    private IOException failure;
+
+    /*
+     * Opens a log for appending, creating the file if needed. Call replay first to apply
+     * the entries of an existing log, which also cuts off an entry torn by a crash.
+     * @param logFile The name of the log file.
+     * @param policy When appended entries are forced to disk.
+     * @param groupMillis How often the GROUP policy forces the pending entries.
+     * @throws IOException if the file cannot be opened.
+     */
+    public WriteAheadLog(String logFile, SyncPolicy policy, long groupMillis) throws IOException {
+        this.channel = FileChannel.open(Paths.get(logFile), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.policy = policy;
+        if (policy == SyncPolicy.GROUP) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncQuietly, groupMillis, groupMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    // Appends an entry recording that d was put into the dictionary
+    public synchronized void logPut(Record d) throws IOException {
+        byte[] label = d.getKey().getLabel().getBytes(StandardCharsets.UTF_8);
+        byte[] data = d.getDataItem().getBytes(StandardCharsets.UTF_8);
+        append(PUT, d.getKey().getType(), label, data);
+    }
+
+    // Appends an entry recording that the record with key k was removed from the dictionary
+    public synchronized void logRemove(Key k) throws IOException {
+        append(REMOVE, k.getType(), k.getLabel().getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    // Writes and forces every pending entry, whatever the policy. Call it at the end of
+    // a batch of writes to commit them together with a single force.
+    public synchronized void sync() throws IOException {
+        checkHealthy();
+        flush();
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    // Stops the group commit thread and forces the pending entries before closing the file,
+    // unless a write has failed
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        try {
+            // Nothing more can be written after a failed write
+            if (failure == null && policy == SyncPolicy.NONE) {
+                flush();
+            } else if (failure == null) {
+                sync();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /*
+     * Applies the entries of a log to a dictionary, in order. Puts of keys that are
+     * already present and removes of keys that are missing are skipped, so replaying on
+     * top of an input file that already has some of the changes is harmless. Reading
+     * stops at the first incomplete or corrupt entry, which a crash can leave at the end
+     * of the log, and the file is truncated there so that new entries follow valid ones.
+     * @param logFile The name of the log file; a missing file is an empty log.
+     * @param dictionary The dictionary to apply the entries to.
+     * @return The number of entries that changed the dictionary, leaving out skipped ones.
+     * @throws IOException if there's an error reading the file.
+     */
+    public static int replay(String logFile, BSTDictionary dictionary) throws IOException {
+        Path path = Paths.get(logFile);
+        if (!path.toFile().exists()) {
+            return 0;
+        }
+        int applied = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            int pos = 0;
+            while (bytes.limit() - pos >= ENTRY_HEADER) {
+                int length = bytes.getInt(pos);
+                int checksum = bytes.getInt(pos + 4);
+                if (length < 9 || length > bytes.limit() - pos - ENTRY_HEADER) {
+                    break;
+                }
+                ByteBuffer payload = bytes.slice(pos + ENTRY_HEADER, length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (apply(payload, dictionary)) {
+                    applied++;
+                }
+                pos += ENTRY_HEADER + length;
+            }
+            if (pos < channel.size()) {
+                channel.truncate(pos);
+            }
+        }
+        return applied;
+    }
+
+    // Applies one entry payload: operation, type, label length and bytes, then for a put
+    // the data length and bytes. Returns false if the dictionary already had the change.
+    private static boolean apply(ByteBuffer payload, BSTDictionary dictionary) {
+        byte op = payload.get();
+        int type = payload.getInt();
+        Key key = new Key(readString(payload), type);
+        try {
+            if (op == PUT) {
+                dictionary.put(new Record(key, readString(payload)));
+                return true;
+            } else if (op == REMOVE) {
+                dictionary.remove(key);
+                return true;
+            }
+        } catch (DictionaryException e) {
+            // Already applied to the input file
+        }
+        return false;
+    }
+
+    // Reads a length-prefixed UTF-8 string
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Encodes an entry into the buffer, then writes and forces it as the policy requires
+    private void append(byte op, int type, byte[] label, byte[] data) throws IOException {
+        checkHealthy();
+        int length = 1 + 4 + 4 + label.length + (data != null ? 4 + data.length : 0);
+        if (ENTRY_HEADER + length > buffer.remaining()) {
+            flush();
+        }
+        ByteBuffer target = ENTRY_HEADER + length <= buffer.capacity() ? buffer
+                : ByteBuffer.allocate(ENTRY_HEADER + length);
+        int start = target.position();
+        target.putInt(length).putInt(0).put(op).putInt(type).putInt(label.length).put(label);
+        if (data != null) {
+            target.putInt(data.length).put(data);
+        }
+        crc.reset();
+        crc.update(target.array(), start + ENTRY_HEADER, length);
+        target.putInt(start + 4, (int) crc.getValue());
+        if (target != buffer) {
+            target.flip();
+            write(target);
+        }
+        if (policy == SyncPolicy.ALWAYS) {
+            sync();
+        }
+    }
+
+    // Writes the buffered entries to the file without forcing them
+    private void flush() throws IOException {
+        buffer.flip();
+        try {
+            write(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    // Writes all remaining bytes of source to the end of the file, marking the log as
+    // failed if that does not work
+    private void write(ByteBuffer source) throws IOException {
+        if (source.hasRemaining()) {
+            dirty = true;
+        }
+        try {
+            while (source.hasRemaining()) {
+                writeSome(source);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    // Writes some of the remaining bytes of source to the end of the file. Tests override
+    // it to make a write fail partway.
+    int writeSome(ByteBuffer source) throws IOException {
+        return channel.write(source);
+    }
+
+    // Throws if an earlier write failed
+    private void checkHealthy() throws IOException {
+        if (failure != null) {
+            throw new IOException("The log is unusable after a failed write", failure);
+        }
+    }
+
+    // Group commit task: forces the pending entries, leaving errors to the next sync or close
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // Reported by the next explicit sync or close
+        }
+    }
+}